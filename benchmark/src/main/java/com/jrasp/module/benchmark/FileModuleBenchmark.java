@@ -0,0 +1,130 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.file.FileModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.reflect.Method;
+import java.nio.file.FileSystems;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// 文件读写 hook: FileInputStream.<init>(File), FileOutputStream.<init>(File, boolean)
+// nio hook: FileSystemProvider.newByteChannel, 以及 newInputStream 调用 newByteChannel 时的重入(只检测一次)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileModuleBenchmark {
+
+    private ModuleHarness harness;
+
+    private HookInvoker inputHook;
+
+    private HookInvoker outputHook;
+
+    private Advice benignRead;
+
+    private Advice attackRead;
+
+    private Advice benignWrite;
+
+    private HookInvoker nioHook;
+
+    private Advice nioBenignRead;
+
+    private Advice nioBenignInputStream;
+
+    private Advice nioAttackRead;
+
+    @Setup
+    public void setup() throws Exception {
+        harness = ModuleHarness.load(new FileModule());
+        inputHook = harness.hook("fileInputStreamHook");
+        outputHook = harness.hook("fileOutputStreamHook");
+        benignRead = HookInvoker.advice(FileInputStream.class.getConstructor(File.class), null,
+                new File("/opt/app/conf/application.properties"));
+        attackRead = HookInvoker.advice(FileInputStream.class.getConstructor(File.class), null,
+                new File("/opt/app/upload/../../../etc/passwd"));
+        benignWrite = HookInvoker.advice(FileOutputStream.class.getConstructor(File.class, boolean.class), null,
+                new File("/opt/app/logs/app.log"), true);
+
+        nioHook = harness.hook("nioFileHook");
+        FileSystemProvider provider = FileSystems.getDefault().provider();
+        Method newByteChannel = provider.getClass().getMethod("newByteChannel", Path.class, Set.class, FileAttribute[].class);
+        Method newInputStream = provider.getClass().getMethod("newInputStream", Path.class, OpenOption[].class);
+        Set<OpenOption> readOptions = Collections.<OpenOption>singleton(StandardOpenOption.READ);
+        nioBenignRead = HookInvoker.advice(newByteChannel, provider,
+                Paths.get("/opt/app/conf/application.properties"), readOptions, new FileAttribute[0]);
+        nioBenignInputStream = HookInvoker.advice(newInputStream, provider,
+                Paths.get("/opt/app/conf/application.properties"), new OpenOption[0]);
+        nioAttackRead = HookInvoker.advice(newByteChannel, provider,
+                Paths.get("/opt/app/upload/../../../etc/passwd"), readOptions, new FileAttribute[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        harness.unload();
+    }
+
+    @Benchmark
+    public Object benignRead() throws Throwable {
+        inputHook.before(benignRead);
+        return benignRead;
+    }
+
+    @Benchmark
+    public Object benignWrite() throws Throwable {
+        outputHook.before(benignWrite);
+        return benignWrite;
+    }
+
+    @Benchmark
+    public Object attackRead() {
+        try {
+            inputHook.before(attackRead);
+        } catch (Throwable e) {
+            return e;
+        }
+        return attackRead;
+    }
+
+    @Benchmark
+    public Object nioBenignRead() throws Throwable {
+        nioHook.before(nioBenignRead);
+        nioHook.afterReturning(nioBenignRead);
+        return nioBenignRead;
+    }
+
+    // Files.newInputStream: newInputStream 中调用 newByteChannel, 内层调用不再检测
+    @Benchmark
+    public Object nioBenignInputStream() throws Throwable {
+        nioHook.before(nioBenignInputStream);
+        nioHook.before(nioBenignRead);
+        nioHook.afterReturning(nioBenignRead);
+        nioHook.afterReturning(nioBenignInputStream);
+        return nioBenignInputStream;
+    }
+
+    @Benchmark
+    public Object nioAttackRead() {
+        try {
+            nioHook.before(nioAttackRead);
+        } catch (Throwable e) {
+            return e;
+        }
+        return nioAttackRead;
+    }
+}
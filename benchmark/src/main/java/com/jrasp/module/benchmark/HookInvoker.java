@@ -0,0 +1,71 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.api.listener.ext.AdviceListener;
+import com.jrasp.api.listener.ext.Behavior;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+// 直接调用 AdviceListener 的 before/afterReturning, 不经过 jrasp-agent 的事件分发
+public class HookInvoker {
+
+    private final AdviceListener listener;
+
+    private final MethodHandle before;
+
+    private final MethodHandle afterReturning;
+
+    HookInvoker(AdviceListener listener) {
+        this.listener = listener;
+        this.before = handle("before");
+        this.afterReturning = handle("afterReturning");
+    }
+
+    // 注册这个 hook 的模块方法名
+    public String hookMethod() {
+        Method enclosingMethod = listener.getClass().getEnclosingMethod();
+        return enclosingMethod != null ? enclosingMethod.getName() : null;
+    }
+
+    public void before(Advice advice) throws Throwable {
+        before.invokeExact(listener, advice);
+    }
+
+    public void afterReturning(Advice advice) throws Throwable {
+        afterReturning.invokeExact(listener, advice);
+    }
+
+    // 桩 Advice: behavior 为被 hook 的方法或构造函数
+    public static Advice advice(AccessibleObject behavior, Object target, Object... parameters) {
+        Behavior adviceBehavior = behavior instanceof Method
+                ? new Behavior.MethodImpl((Method) behavior)
+                : new Behavior.ConstructorImpl((Constructor<?>) behavior);
+        return new Advice(0, 0, adviceBehavior, HookInvoker.class.getClassLoader(), parameters, target);
+    }
+
+    // 设置方法返回值, 用于驱动 afterReturning
+    public static Advice returning(Advice advice, Object returnObj) {
+        try {
+            Method applyReturn = Advice.class.getDeclaredMethod("applyReturn", Object.class);
+            applyReturn.setAccessible(true);
+            applyReturn.invoke(advice, returnObj);
+            return advice;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle handle(String name) {
+        try {
+            Method method = AdviceListener.class.getDeclaredMethod(name, Advice.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
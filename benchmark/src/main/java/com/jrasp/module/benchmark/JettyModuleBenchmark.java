@@ -0,0 +1,46 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.common.RequestContext;
+import com.jrasp.module.jetty.JettyModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+// jetty body 截取; 请求起点 Server.handle(HttpChannel) 需要真实的 HttpChannel, 这里直接复位请求上下文
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JettyModuleBenchmark {
+
+    @Param({"64", "8192"})
+    public int chunkSize;
+
+    private HookInvoker bodyHook;
+
+    private ThreadLocal<RequestContext> requestContext;
+
+    private Advice read;
+
+    @Setup
+    public void setup() throws Exception {
+        ModuleHarness harness = ModuleHarness.load(new JettyModule());
+        bodyHook = harness.hook("jettyRequestBodyHook");
+        requestContext = harness.field("requestContext");
+        byte[] bytes = StubRequests.body(chunkSize);
+        read = HookInvoker.returning(HookInvoker.advice(
+                InputStream.class.getMethod("read", byte[].class, int.class, int.class), null, bytes, 0, bytes.length),
+                bytes.length);
+    }
+
+    @Benchmark
+    public Object body() throws Throwable {
+        requestContext.get().recycle();
+        bodyHook.afterReturning(read);
+        return read;
+    }
+}
@@ -0,0 +1,50 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.jni.JniHook;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// jni hook: System.load/loadLibrary
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JniHookBenchmark {
+
+    private ModuleHarness harness;
+
+    private HookInvoker hook;
+
+    private Advice benign;
+
+    private Advice attack;
+
+    @Setup
+    public void setup() throws Exception {
+        harness = ModuleHarness.load(new JniHook());
+        hook = harness.hook("loadLibraryHook");
+        benign = HookInvoker.advice(System.class.getMethod("loadLibrary", String.class), null, "zip");
+        attack = HookInvoker.advice(System.class.getMethod("load", String.class), null, "/tmp/upload/libexp.so");
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        harness.unload();
+    }
+
+    @Benchmark
+    public Object benign() throws Throwable {
+        hook.before(benign);
+        return benign;
+    }
+
+    @Benchmark
+    public Object attack() throws Throwable {
+        hook.before(attack);
+        return attack;
+    }
+}
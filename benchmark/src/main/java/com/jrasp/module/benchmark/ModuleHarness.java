@@ -0,0 +1,182 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.LoadCompleted;
+import com.jrasp.api.ModuleLifecycle;
+import com.jrasp.api.Resource;
+import com.jrasp.api.annotation.Command;
+import com.jrasp.api.json.JSONObject;
+import com.jrasp.api.listener.ext.AdviceListener;
+import com.jrasp.api.log.Log;
+import com.jrasp.api.resource.ModuleEventWatcher;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 在 jrasp-agent 之外加载模块: 注入 @Resource 字段, 通过桩 ModuleEventWatcher 收集模块注册的 AdviceListener
+public class ModuleHarness {
+
+    private final Object module;
+
+    private final List<HookInvoker> hooks = new ArrayList<HookInvoker>();
+
+    private final ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal = new ThreadLocal<HashMap<String, Object>>() {
+        @Override
+        protected HashMap<String, Object> initialValue() {
+            return new HashMap<String, Object>();
+        }
+    };
+
+    private ModuleHarness(Object module) {
+        this.module = module;
+    }
+
+    public static ModuleHarness load(Object module) throws Exception {
+        ModuleHarness harness = new ModuleHarness(module);
+        harness.inject();
+        if (module instanceof LoadCompleted) {
+            ((LoadCompleted) module).loadCompleted();
+        }
+        return harness;
+    }
+
+    // 按注册 hook 的模块方法名获取, 例如 fileInputStreamHook
+    public HookInvoker hook(String hookMethod) {
+        for (HookInvoker hook : hooks) {
+            if (hookMethod.equals(hook.hookMethod())) {
+                return hook;
+            }
+        }
+        throw new IllegalArgumentException("hook not found: " + hookMethod);
+    }
+
+    // 读取模块的私有字段
+    @SuppressWarnings("unchecked")
+    public <T> T field(String name) throws Exception {
+        Field field = module.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(module);
+    }
+
+    public ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal() {
+        return requestInfoThreadLocal;
+    }
+
+    // 调用模块的 @Command 方法, 用于修改白名单、阻断状态等配置
+    public String command(String name, Map<String, ?> parameterMap) throws Exception {
+        for (Method method : module.getClass().getMethods()) {
+            Command command = method.getAnnotation(Command.class);
+            if (command != null && command.value().equals(name)) {
+                StringWriter out = new StringWriter();
+                method.invoke(module, parameterMap, new PrintWriter(out));
+                return out.toString();
+            }
+        }
+        throw new IllegalArgumentException("command not found: " + name);
+    }
+
+    public void unload() throws Throwable {
+        if (module instanceof ModuleLifecycle) {
+            ((ModuleLifecycle) module).onUnload();
+        }
+    }
+
+    private void inject() throws Exception {
+        for (Class<?> clazz = module.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(Resource.class)) {
+                    continue;
+                }
+                Object value = resourceOf(field.getType());
+                if (value != null) {
+                    field.setAccessible(true);
+                    field.set(module, value);
+                }
+            }
+        }
+    }
+
+    private Object resourceOf(Class<?> type) {
+        if (type == ThreadLocal.class) {
+            return requestInfoThreadLocal;
+        }
+        if (type == ModuleEventWatcher.class) {
+            return proxy(type, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    collectListeners(args);
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+        if (type == JSONObject.class && type.isInterface()) {
+            return proxy(type, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return args != null && args.length > 0 ? String.valueOf(args[0]) : defaultValue(method.getReturnType());
+                }
+            });
+        }
+        if (type == Log.class) {
+            return proxy(type, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+        return null;
+    }
+
+    // EventWatchBuilder 会把 AdviceListener 包装为 EventListener 再注册, 这里取出被包装的 AdviceListener
+    private void collectListeners(Object[] args) {
+        if (args == null) {
+            return;
+        }
+        for (Object arg : args) {
+            if (arg == null) {
+                continue;
+            }
+            if (arg instanceof AdviceListener) {
+                hooks.add(new HookInvoker((AdviceListener) arg));
+                continue;
+            }
+            for (Class<?> clazz = arg.getClass(); clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (AdviceListener.class.isAssignableFrom(field.getType())) {
+                        try {
+                            field.setAccessible(true);
+                            hooks.add(new HookInvoker((AdviceListener) field.get(arg)));
+                        } catch (IllegalAccessException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(ModuleHarness.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        return null;
+    }
+}
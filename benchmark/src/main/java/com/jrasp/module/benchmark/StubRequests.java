@@ -0,0 +1,55 @@
+package com.jrasp.module.benchmark;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+// 桩 HttpServletRequest, 只实现请求上下文用到的方法
+public class StubRequests {
+
+    public static HttpServletRequest request(final String requestURI, final Map<String, String[]> parameterMap) {
+        return (HttpServletRequest) ModuleHarness.proxy(HttpServletRequest.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if ("getLocalAddr".equals(name)) {
+                    return "127.0.0.1";
+                }
+                if ("getRemoteHost".equals(name) || "getRemoteAddr".equals(name)) {
+                    return "10.0.0.8";
+                }
+                if ("getMethod".equals(name)) {
+                    return "POST";
+                }
+                if ("getProtocol".equals(name)) {
+                    return "HTTP/1.1";
+                }
+                if ("getRequestURI".equals(name)) {
+                    return requestURI;
+                }
+                if ("getParameterMap".equals(name)) {
+                    return parameterMap;
+                }
+                return ModuleHarness.defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    public static Map<String, String[]> parameters(String... keyValues) {
+        Map<String, String[]> parameterMap = new HashMap<String, String[]>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            parameterMap.put(keyValues[i], new String[]{keyValues[i + 1]});
+        }
+        return parameterMap;
+    }
+
+    public static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        return body;
+    }
+}
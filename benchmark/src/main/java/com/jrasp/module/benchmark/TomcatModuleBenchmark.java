@@ -0,0 +1,84 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.tomcat.TomcatModule;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+// tomcat 请求上下文和 body 截取; 每次调用都从请求起点开始, 避免 body 截取的耗时上限让后续调用直接返回
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TomcatModuleBenchmark {
+
+    @Param({"64", "8192"})
+    public int chunkSize;
+
+    private HookInvoker preHook;
+
+    private HookInvoker requestHook;
+
+    private HookInvoker byteBodyHook;
+
+    private HookInvoker charBodyHook;
+
+    private Advice service;
+
+    private Advice invoke;
+
+    private Advice byteRead;
+
+    private Advice charRead;
+
+    @Setup
+    public void setup() throws Exception {
+        ModuleHarness harness = ModuleHarness.load(new TomcatModule());
+        preHook = harness.hook("tomcatRequestPreHook");
+        requestHook = harness.hook("tomcatRequestHook");
+        byteBodyHook = harness.hook("tomcatRequestByteBodyHook");
+        charBodyHook = harness.hook("tomcatRequestCharBodyHook");
+        Method servletService = Servlet.class.getMethod("service", ServletRequest.class, ServletResponse.class);
+        service = HookInvoker.advice(servletService, null, null, null);
+        invoke = HookInvoker.advice(servletService, null,
+                StubRequests.request("/api/user", StubRequests.parameters("id", "42", "name", "jrasp")), null);
+        byte[] bytes = StubRequests.body(chunkSize);
+        byteRead = HookInvoker.returning(HookInvoker.advice(
+                InputStream.class.getMethod("read", byte[].class, int.class, int.class), null, bytes, 0, bytes.length),
+                bytes.length);
+        char[] chars = new String(bytes).toCharArray();
+        charRead = HookInvoker.returning(HookInvoker.advice(
+                Reader.class.getMethod("read", char[].class, int.class, int.class), null, chars, 0, chars.length),
+                chars.length);
+    }
+
+    @Benchmark
+    public Object request() throws Throwable {
+        preHook.before(service);
+        requestHook.before(invoke);
+        return invoke;
+    }
+
+    @Benchmark
+    public Object byteBody() throws Throwable {
+        preHook.before(service);
+        byteBodyHook.afterReturning(byteRead);
+        return byteRead;
+    }
+
+    @Benchmark
+    public Object charBody() throws Throwable {
+        preHook.before(service);
+        charBodyHook.afterReturning(charRead);
+        return charRead;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.weblogic.WeblogicModule;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+// weblogic 请求上下文和 body 截取
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeblogicModuleBenchmark {
+
+    @Param({"64", "8192"})
+    public int chunkSize;
+
+    private HookInvoker requestHook;
+
+    private HookInvoker bodyHook;
+
+    private Advice securedExecute;
+
+    private Advice read;
+
+    @Setup
+    public void setup() throws Exception {
+        ModuleHarness harness = ModuleHarness.load(new WeblogicModule());
+        requestHook = harness.hook("buildWeblogicRequestWatcher");
+        bodyHook = harness.hook("buildWeblogicRequestBodyWatcher");
+        securedExecute = HookInvoker.advice(Servlet.class.getMethod("service", ServletRequest.class, ServletResponse.class), null,
+                StubRequests.request("/console/login", StubRequests.parameters("user", "weblogic")), null);
+        byte[] bytes = StubRequests.body(chunkSize);
+        read = HookInvoker.returning(HookInvoker.advice(
+                InputStream.class.getMethod("read", byte[].class, int.class, int.class), null, bytes, 0, bytes.length),
+                bytes.length);
+    }
+
+    @Benchmark
+    public Object request() throws Throwable {
+        requestHook.before(securedExecute);
+        return securedExecute;
+    }
+
+    @Benchmark
+    public Object body() throws Throwable {
+        requestHook.before(securedExecute);
+        bodyHook.afterReturning(read);
+        return read;
+    }
+}
@@ -0,0 +1,59 @@
+package com.jrasp.module.benchmark;
+
+import com.jrasp.api.listener.ext.Advice;
+import com.jrasp.module.xxe.XxeModule;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// xxe hook: 在工厂创建之后关闭外部实体, enableBlock=false 时直接返回
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XxeModuleBenchmark {
+
+    @Param({"true", "false"})
+    public String enableBlock;
+
+    private ModuleHarness harness;
+
+    private HookInvoker documentBuilderHook;
+
+    private HookInvoker xmlInputHook;
+
+    private Advice documentBuilderFactory;
+
+    private Advice xmlInputFactory;
+
+    @Setup
+    public void setup() throws Exception {
+        harness = ModuleHarness.load(new XxeModule());
+        harness.command("/block", Collections.singletonMap("isBlock", enableBlock));
+        documentBuilderHook = harness.hook("closeDocumentBuilderFactoryConfigXXE");
+        xmlInputHook = harness.hook("closeXMLInputFactoryConfigXXE");
+        documentBuilderFactory = HookInvoker.returning(
+                HookInvoker.advice(DocumentBuilderFactory.class.getMethod("newInstance"), null),
+                DocumentBuilderFactory.newInstance());
+        xmlInputFactory = HookInvoker.returning(
+                HookInvoker.advice(XMLInputFactory.class.getMethod("newInstance"), null),
+                XMLInputFactory.newInstance());
+    }
+
+    @Benchmark
+    public Object documentBuilderFactory() throws Throwable {
+        documentBuilderHook.afterReturning(documentBuilderFactory);
+        return documentBuilderFactory;
+    }
+
+    @Benchmark
+    public Object xmlInputFactory() throws Throwable {
+        xmlInputHook.afterReturning(xmlInputFactory);
+        return xmlInputFactory;
+    }
+}
@@ -0,0 +1,281 @@
+package com.jrasp.module.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Aho-Corasick 多模式匹配自动机, 编译后不可变, 多线程共享
+// 状态是一个 int, 调用方可以保存状态, 分多次输入(例如流式写入的字节)
+// 稠密模式: ASCII 字符使用完整的转移表, 每个字符一次数组访问, 每个状态占用 512 字节, 适合少量固定的模式
+// 稀疏模式: 只有根节点使用转移表, 其他状态沿失败链查找子节点, 适合按请求动态构建的大量模式
+public final class AhoCorasick {
+
+    public final static int ROOT = 0;
+
+    private final static int ASCII = 128;
+
+    private final String[] patterns;
+
+    private final boolean ignoreCase;
+
+    // ASCII 转移表: delta[state * 128 + c], 稀疏模式下只有根节点一行
+    private final int[] delta;
+
+    private final boolean dense;
+
+    // 子节点, 稠密模式下只保存非 ASCII 字符; 没有时为 null
+    private final char[][] labels;
+
+    private final int[][] children;
+
+    private final int[] fail;
+
+    // 以该状态结尾的模式(包括后缀链接上的), -1 表示没有
+    private final int[] output;
+
+    // 失败链上最近的、自身是某个模式结尾的状态, -1 表示没有; 用于枚举同一位置结尾的所有模式
+    private final int[] dictionary;
+
+    // 自身是模式结尾时的模式下标, -1 表示没有
+    private final int[] terminal;
+
+    private AhoCorasick(String[] patterns, boolean ignoreCase, int[] delta, boolean dense, char[][] labels, int[][] children,
+                        int[] fail, int[] output, int[] dictionary, int[] terminal) {
+        this.patterns = patterns;
+        this.ignoreCase = ignoreCase;
+        this.delta = delta;
+        this.dense = dense;
+        this.labels = labels;
+        this.children = children;
+        this.fail = fail;
+        this.output = output;
+        this.dictionary = dictionary;
+        this.terminal = terminal;
+    }
+
+    public static AhoCorasick compile(String[] patterns, boolean ignoreCase) {
+        return compile(patterns, ignoreCase, true);
+    }
+
+    public static AhoCorasick compile(String[] patterns, boolean ignoreCase, boolean dense) {
+        // 1. 构建前缀树, 所有字符的子节点都保存在 label 数组中
+        List<char[]> labelList = new ArrayList<char[]>();
+        List<int[]> childList = new ArrayList<int[]>();
+        List<Integer> terminalList = new ArrayList<Integer>();
+        labelList.add(null);
+        childList.add(null);
+        terminalList.add(-1);
+        for (int p = 0; p < patterns.length; p++) {
+            String pattern = patterns[p];
+            if (pattern == null || pattern.length() == 0) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = fold(pattern.charAt(i), ignoreCase);
+                int next = find(labelList.get(state), childList.get(state), c);
+                if (next < 0) {
+                    next = labelList.size();
+                    labelList.add(null);
+                    childList.add(null);
+                    terminalList.add(-1);
+                    char[] labels = labelList.get(state);
+                    int[] children = childList.get(state);
+                    int size = labels == null ? 0 : labels.length;
+                    labels = labels == null ? new char[1] : Arrays.copyOf(labels, size + 1);
+                    children = children == null ? new int[1] : Arrays.copyOf(children, size + 1);
+                    labels[size] = c;
+                    children[size] = next;
+                    labelList.set(state, labels);
+                    childList.set(state, children);
+                }
+                state = next;
+            }
+            if (terminalList.get(state) < 0) {
+                terminalList.set(state, p);
+            }
+        }
+
+        // 2. 按层次计算失败链接和输出
+        int count = labelList.size();
+        char[][] labels = labelList.toArray(new char[count][]);
+        int[][] children = childList.toArray(new int[count][]);
+        int[] fail = new int[count];
+        int[] output = new int[count];
+        int[] dictionary = new int[count];
+        int[] terminal = new int[count];
+        for (int s = 0; s < count; s++) {
+            terminal[s] = terminalList.get(s);
+        }
+        output[ROOT] = terminal[ROOT];
+        dictionary[ROOT] = -1;
+        int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        if (children[ROOT] != null) {
+            for (int next : children[ROOT]) {
+                fail[next] = ROOT;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int f = fail[state];
+            dictionary[state] = terminal[f] >= 0 ? f : dictionary[f];
+            output[state] = terminal[state] >= 0 ? terminal[state] : output[f];
+            if (children[state] != null) {
+                for (int i = 0; i < children[state].length; i++) {
+                    int next = children[state][i];
+                    fail[next] = slowNext(labels, children, fail, f, labels[state][i]);
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        // 3. 转移表: 稠密模式按层次补全所有状态, 稀疏模式只补全根节点
+        int[] delta = new int[(dense ? count : 1) * ASCII];
+        fillRow(delta, ROOT, labels[ROOT], children[ROOT], null, 0);
+        if (dense) {
+            for (int i = 0; i < tail; i++) {
+                int state = queue[i];
+                fillRow(delta, state, labels[state], children[state], delta, fail[state] * ASCII);
+            }
+            // 稠密模式下 ASCII 子节点已经在转移表中, 只保留非 ASCII 字符
+            for (int s = 0; s < count; s++) {
+                if (labels[s] != null) {
+                    int size = 0;
+                    for (char c : labels[s]) {
+                        if (c >= ASCII) {
+                            size++;
+                        }
+                    }
+                    char[] nonAsciiLabels = size == 0 ? null : new char[size];
+                    int[] nonAsciiChildren = size == 0 ? null : new int[size];
+                    for (int i = 0, j = 0; i < labels[s].length; i++) {
+                        if (labels[s][i] >= ASCII) {
+                            nonAsciiLabels[j] = labels[s][i];
+                            nonAsciiChildren[j++] = children[s][i];
+                        }
+                    }
+                    labels[s] = nonAsciiLabels;
+                    children[s] = nonAsciiChildren;
+                }
+            }
+        }
+        return new AhoCorasick(patterns.clone(), ignoreCase, delta, dense, labels, children, fail, output, dictionary, terminal);
+    }
+
+    // 输入一个字符, 返回新状态
+    public int next(int state, char c) {
+        c = fold(c, ignoreCase);
+        if (c < ASCII && (dense || state == ROOT)) {
+            return delta[state * ASCII + c];
+        }
+        while (true) {
+            if (state == ROOT && c < ASCII) {
+                return delta[c];
+            }
+            int next = find(labels[state], children[state], c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    // 当前状态上匹配到的模式下标, -1 表示没有
+    public int pattern(int state) {
+        return output[state];
+    }
+
+    // 当前状态上匹配到的所有模式: for (int m = firstMatch(state); m >= 0; m = nextMatch(m)) getPattern(matched(m))
+    public int firstMatch(int state) {
+        return terminal[state] >= 0 ? state : dictionary[state];
+    }
+
+    public int nextMatch(int match) {
+        return dictionary[match];
+    }
+
+    public int matched(int match) {
+        return terminal[match];
+    }
+
+    // 返回 text 中第一个匹配到的模式下标, -1 表示没有
+    public int match(CharSequence text) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            if (output[state] >= 0) {
+                return output[state];
+            }
+        }
+        return -1;
+    }
+
+    public String getPattern(int index) {
+        return patterns[index];
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    // 状态数
+    public int states() {
+        return fail.length;
+    }
+
+    // base 为失败状态的转移表行, 为 null 时没有子节点的字符回到根节点
+    private static void fillRow(int[] delta, int state, char[] labels, int[] children, int[] fallback, int base) {
+        int row = state * ASCII;
+        for (int c = 0; c < ASCII; c++) {
+            delta[row + c] = fallback == null ? ROOT : fallback[base + c];
+        }
+        if (labels != null) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] < ASCII) {
+                    delta[row + labels[i]] = children[i];
+                }
+            }
+        }
+    }
+
+    // 构建时使用, 子节点包括 ASCII 字符
+    private static int slowNext(char[][] labels, int[][] children, int[] fail, int state, char c) {
+        while (true) {
+            int next = find(labels[state], children[state], c);
+            if (next >= 0) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static int find(char[] labels, int[] children, char c) {
+        if (labels != null) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static char fold(char c, boolean ignoreCase) {
+        if (!ignoreCase) {
+            return c;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c < ASCII ? c : Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,36 @@
+package com.jrasp.module.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 告警事件: hook 点只保存请求上下文快照和告警字段, 在后台线程中合并后序列化
+public class AlertEvent {
+
+    private final RequestContext.Snapshot context;
+
+    private final HashMap<String, Object> attributes = new HashMap<String, Object>(8);
+
+    public AlertEvent(RequestContext.Snapshot context) {
+        this.context = context;
+    }
+
+    public AlertEvent put(String key, Object value) {
+        attributes.put(key, value);
+        return this;
+    }
+
+    public Object get(String key) {
+        return attributes.get(key);
+    }
+
+    public RequestContext.Snapshot getContext() {
+        return context;
+    }
+
+    public Map<String, Object> toMap() {
+        HashMap<String, Object> result = new HashMap<String, Object>(32);
+        context.copyTo(result);
+        result.putAll(attributes);
+        return result;
+    }
+}
@@ -0,0 +1,239 @@
+package com.jrasp.module.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// 异步告警输出: hook 点只把告警放入有界队列, 序列化和日志输出在后台线程中批量完成
+public class AlertPipeline<E> {
+
+    public interface Handler<E> {
+        // 在后台线程中调用, 负责序列化和输出
+        void handle(E event);
+    }
+
+    public final static int DEFAULT_CAPACITY = 4096;
+
+    // 每批最多处理的告警数量
+    private final static int BATCH_SIZE = 256;
+
+    // 队列为空时后台线程的最长等待时间
+    private final static long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String name;
+
+    private final RingBuffer<E> ringBuffer;
+
+    private final Handler<E> handler;
+
+    private volatile OverflowPolicy overflowPolicy;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // 告警被丢弃时在放入告警的线程中调用, 例如撤销告警中已经记录的状态
+    private volatile Handler<E> dropHandler;
+
+    private volatile boolean running;
+
+    private volatile boolean consumerParked;
+
+    private volatile Thread consumer;
+
+    // 后台线程周期执行的任务, 例如输出限流汇总
+    private volatile Runnable periodicTask;
+
+    private volatile long periodNanos;
+
+    public AlertPipeline(String name, Handler<E> handler) {
+        this(name, DEFAULT_CAPACITY, OverflowPolicy.DROP_NEWEST, handler);
+    }
+
+    public AlertPipeline(String name, int capacity, OverflowPolicy overflowPolicy, Handler<E> handler) {
+        this.name = name;
+        this.ringBuffer = new RingBuffer<E>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.handler = handler;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "jrasp-alert-" + name);
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    // 停止后台线程, 队列中剩余的告警会在退出前输出
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        consumer = null;
+    }
+
+    public void setDropHandler(Handler<E> dropHandler) {
+        this.dropHandler = dropHandler;
+    }
+
+    public void setPeriodicTask(Runnable task, long period, TimeUnit unit) {
+        this.periodNanos = unit.toNanos(period);
+        this.periodicTask = task;
+    }
+
+    // 放入告警, 返回 false 表示告警被丢弃
+    public boolean emit(E event) {
+        if (!running) {
+            // 后台线程未启动时直接在当前线程输出
+            handleQuietly(event);
+            return true;
+        }
+        boolean accepted = ringBuffer.offer(event);
+        if (!accepted) {
+            accepted = offerOnOverflow(event);
+        }
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return accepted;
+    }
+
+    private boolean offerOnOverflow(E event) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!ringBuffer.offer(event)) {
+                    E oldest = ringBuffer.poll();
+                    if (oldest != null) {
+                        dropped(oldest);
+                    }
+                }
+                return true;
+            case BLOCK:
+                while (!ringBuffer.offer(event)) {
+                    if (!running) {
+                        dropped(event);
+                        return false;
+                    }
+                    LockSupport.unpark(consumer);
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+                return true;
+            default:
+                dropped(event);
+                return false;
+        }
+    }
+
+    private void dropped(E event) {
+        droppedCount.incrementAndGet();
+        Handler<E> handler = dropHandler;
+        if (handler != null) {
+            try {
+                handler.handle(event);
+            } catch (Throwable e) {
+                // ignore
+            }
+        }
+    }
+
+    private void consume() {
+        long lastRun = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now - lastRun >= periodNanos) {
+                lastRun = now;
+                runPeriodicTask();
+            }
+            if (drain() == 0) {
+                consumerParked = true;
+                // 再检查一次, 避免错过 park 之前放入的告警
+                if (ringBuffer.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                consumerParked = false;
+            }
+        }
+        // 退出前输出剩余的告警
+        while (drain() > 0) {
+            // continue
+        }
+        runPeriodicTask();
+    }
+
+    private void runPeriodicTask() {
+        Runnable task = periodicTask;
+        if (task == null) {
+            return;
+        }
+        try {
+            task.run();
+        } catch (Throwable e) {
+            // ignore
+        }
+    }
+
+    private int drain() {
+        int count = 0;
+        E event;
+        while (count < BATCH_SIZE && (event = ringBuffer.poll()) != null) {
+            handleQuietly(event);
+            count++;
+        }
+        return count;
+    }
+
+    private void handleQuietly(E event) {
+        try {
+            handler.handle(event);
+        } catch (Throwable e) {
+            // ignore, 告警输出失败不能影响后台线程
+        }
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy != null) {
+            this.overflowPolicy = overflowPolicy;
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public int getPendingCount() {
+        return ringBuffer.size();
+    }
+
+    // 队列状态, 用于命令查询
+    public Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<String, Object>(8);
+        status.put("overflowPolicy", overflowPolicy.name());
+        status.put("capacity", ringBuffer.capacity());
+        status.put("pending", getPendingCount());
+        status.put("dropped", getDroppedCount());
+        return status;
+    }
+}
@@ -0,0 +1,186 @@
+package com.jrasp.module.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// 告警限流: 按 (hook点, 命令/sql/路径指纹) 分桶的令牌桶, 只限制告警输出, 不影响阻断
+// 直接映射的定长表, 每个槽位一个令牌桶(GCRA, 一个 long 记录理论到达时间), 无锁
+// 指纹冲突时新的 key 占用槽位, 旧 key 的抑制次数计入汇总
+public class AlertRateLimiter {
+
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    // 每个 key 每秒允许的告警数
+    public final static double DEFAULT_RATE = 10;
+
+    // 突发允许的告警数
+    public final static int DEFAULT_BURST = 20;
+
+    // 限流汇总的输出间隔
+    public final static long SUMMARY_INTERVAL_SECONDS = 10;
+
+    // 槽位布局: key, 理论到达时间, 抑制次数, 占位(与下一个槽位错开缓存行)
+    private final static int STRIDE = 4;
+
+    private final static int KEY = 0;
+
+    private final static int TAT = 1;
+
+    private final static int SUPPRESSED = 2;
+
+    private final String name;
+
+    private final AtomicLongArray slots;
+
+    // 槽位对应的 hook 点和样例, 只用于汇总输出
+    private final AtomicReferenceArray<Object> samples;
+
+    private final int mask;
+
+    private volatile double rate;
+
+    private volatile int burst;
+
+    // 令牌间隔, 小于等于0表示不限流
+    private volatile long intervalNanos;
+
+    private volatile long toleranceNanos;
+
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    // 槽位被其他 key 占用时, 还未汇总输出的抑制次数
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public AlertRateLimiter(String name) {
+        this(name, DEFAULT_CAPACITY, DEFAULT_RATE, DEFAULT_BURST);
+    }
+
+    public AlertRateLimiter(String name, int capacity, double rate, int burst) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.slots = new AtomicLongArray(size * STRIDE);
+        this.samples = new AtomicReferenceArray<Object>(size * 3);
+        this.mask = size - 1;
+        configure(rate, burst);
+    }
+
+    // rate 小于等于0表示不限流
+    public synchronized void configure(double rate, int burst) {
+        this.rate = rate;
+        this.burst = Math.max(burst, 1);
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        this.toleranceNanos = interval * (this.burst - 1);
+        this.intervalNanos = interval;
+    }
+
+    // 返回 -1 表示告警被抑制; 否则返回这个 key 自上次输出以来被抑制的次数
+    public long tryAcquire(String className, String methodName, long fingerprint, Object sample) {
+        long interval = intervalNanos;
+        if (interval <= 0) {
+            return 0;
+        }
+        long key = key(className, methodName, fingerprint);
+        int index = (int) (key ^ (key >>> 32)) & mask;
+        int base = index * STRIDE;
+        long now = System.nanoTime();
+        if (slots.get(base + KEY) != key) {
+            // 新的 key 占用槽位, 令牌桶为满
+            long evicted = slots.getAndSet(base + SUPPRESSED, 0L);
+            if (evicted > 0) {
+                evictedCount.addAndGet(evicted);
+            }
+            slots.set(base + TAT, now);
+            slots.set(base + KEY, key);
+            samples.set(index * 3, className);
+            samples.set(index * 3 + 1, methodName);
+            samples.set(index * 3 + 2, sample);
+        }
+        while (true) {
+            long tat = slots.get(base + TAT);
+            long start = tat - now > 0 ? tat : now;
+            if (start - now > toleranceNanos) {
+                slots.incrementAndGet(base + SUPPRESSED);
+                suppressedCount.incrementAndGet();
+                return -1;
+            }
+            if (slots.compareAndSet(base + TAT, tat, start + interval)) {
+                return slots.getAndSet(base + SUPPRESSED, 0L);
+            }
+        }
+    }
+
+    // 取出还未输出的抑制次数, 每个 key 一条汇总
+    public List<Map<String, Object>> drainSuppressed() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (int index = 0; index <= mask; index++) {
+            long suppressed = slots.get(index * STRIDE + SUPPRESSED);
+            if (suppressed <= 0) {
+                continue;
+            }
+            suppressed = slots.getAndSet(index * STRIDE + SUPPRESSED, 0L);
+            if (suppressed <= 0) {
+                continue;
+            }
+            Map<String, Object> summary = summary(suppressed);
+            summary.put("hook", samples.get(index * 3) + "#" + samples.get(index * 3 + 1));
+            summary.put("fingerprint", Long.toHexString(slots.get(index * STRIDE + KEY)));
+            summary.put("sample", samples.get(index * 3 + 2));
+            result.add(summary);
+        }
+        long evicted = evictedCount.getAndSet(0L);
+        if (evicted > 0) {
+            result.add(summary(evicted));
+        }
+        return result;
+    }
+
+    private Map<String, Object> summary(long suppressed) {
+        Map<String, Object> summary = new LinkedHashMap<String, Object>(8);
+        summary.put("module", name);
+        summary.put("message", "suppressed " + suppressed + " similar events");
+        summary.put("suppressed", suppressed);
+        return summary;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0L);
+        }
+        for (int i = 0; i < samples.length(); i++) {
+            samples.set(i, null);
+        }
+        evictedCount.set(0L);
+    }
+
+    // 限流配置和抑制总数, 用于命令查询
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<String, Object>(8);
+        status.put("rate", rate);
+        status.put("burst", burst);
+        status.put("suppressed", suppressedCount.get());
+        return status;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    static long key(String className, String methodName, long fingerprint) {
+        long h = Fingerprints.update(Fingerprints.SEED, className.hashCode());
+        h = Fingerprints.update(h, methodName.hashCode());
+        return Fingerprints.mix(Fingerprints.update(h, fingerprint));
+    }
+}
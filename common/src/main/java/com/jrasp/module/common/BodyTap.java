@@ -0,0 +1,155 @@
+package com.jrasp.module.common;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// 请求体旁路: 容器每次读取请求体时, 把读到的字节(或者字符)复制一次到缓冲中, 超过容量的部分丢弃
+// 缓冲随请求上下文按线程复用, 按读到的长度倍增到容量为止; 请求开始时释放超过 RETAINED_CAPACITY 的缓冲,
+// 大请求体不会让每个线程一直占用整个容量; 只有检测模块或者告警读取时才按 utf-8 解码, 解码结果保留到下一次追加
+// 以 CharSequence 的形式放入请求上下文, 其他模块(不同的类加载器)只通过 jdk 的接口访问
+public class BodyTap implements CharSequence {
+
+    // 默认截取请求体的前 64KB
+    public final static int DEFAULT_CAPACITY = 64 * 1024;
+
+    public final static int MAX_CAPACITY = 16 * 1024 * 1024;
+
+    // 第一次读取时创建的缓冲大小
+    private final static int INITIAL_CAPACITY = 1024;
+
+    // 请求之间保留的最大缓冲
+    private final static int RETAINED_CAPACITY = 8 * 1024;
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    // 修改后在下一个请求开始时生效
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    // 第一次读取请求体时创建; servlet 只会通过字节流或者字符流中的一种读取请求体
+    private byte[] bytes;
+
+    private int byteCount;
+
+    private char[] chars;
+
+    private int charCount;
+
+    // 超过容量没有保存的长度
+    private long dropped;
+
+    // 解码的结果, 追加之后清除
+    private String decoded;
+
+    public static int getCapacity() {
+        return capacity;
+    }
+
+    public static void setCapacity(int newCapacity) {
+        capacity = Math.max(0, Math.min(newCapacity, MAX_CAPACITY));
+    }
+
+    // 请求开始时调用; 释放超过保留大小或者超过当前容量的缓冲
+    public void clear() {
+        int limit = Math.min(capacity, RETAINED_CAPACITY);
+        if (bytes != null && bytes.length > limit) {
+            bytes = null;
+        }
+        if (chars != null && chars.length > limit) {
+            chars = null;
+        }
+        byteCount = 0;
+        charCount = 0;
+        dropped = 0;
+        decoded = null;
+    }
+
+    // 读取之后调用, b[off, off + len) 为这次读到的内容
+    public void append(byte[] b, int off, int len) {
+        if (len <= 0) {
+            return;
+        }
+        int limit = capacity;
+        if (bytes == null) {
+            bytes = new byte[grow(0, len, limit)];
+        } else if (bytes.length - byteCount < len && bytes.length < limit) {
+            bytes = Arrays.copyOf(bytes, grow(bytes.length, byteCount + len, limit));
+        }
+        int copy = Math.min(len, bytes.length - byteCount);
+        if (copy > 0) {
+            System.arraycopy(b, off, bytes, byteCount, copy);
+            byteCount += copy;
+            decoded = null;
+        }
+        dropped += len - copy;
+    }
+
+    public void append(char[] c, int off, int len) {
+        if (len <= 0) {
+            return;
+        }
+        int limit = capacity;
+        if (chars == null) {
+            chars = new char[grow(0, len, limit)];
+        } else if (chars.length - charCount < len && chars.length < limit) {
+            chars = Arrays.copyOf(chars, grow(chars.length, charCount + len, limit));
+        }
+        int copy = Math.min(len, chars.length - charCount);
+        if (copy > 0) {
+            System.arraycopy(c, off, chars, charCount, copy);
+            charCount += copy;
+            decoded = null;
+        }
+        dropped += len - copy;
+    }
+
+    // 从 length 倍增到不小于 required, 不超过 limit
+    private static int grow(int length, int required, int limit) {
+        int size = Math.max(length, Math.min(INITIAL_CAPACITY, limit));
+        while (size < required && size < limit) {
+            size = (int) Math.min((long) size * 2, limit);
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return byteCount == 0 && charCount == 0;
+    }
+
+    public boolean isTruncated() {
+        return dropped > 0;
+    }
+
+    @Override
+    public int length() {
+        return toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    // 截断处的多字节字符解码为替换字符
+    @Override
+    public String toString() {
+        String result = decoded;
+        if (result == null) {
+            if (isEmpty()) {
+                result = "";
+            } else if (charCount == 0) {
+                result = new String(bytes, 0, byteCount, UTF_8);
+            } else if (byteCount == 0) {
+                result = new String(chars, 0, charCount);
+            } else {
+                result = new String(bytes, 0, byteCount, UTF_8) + new String(chars, 0, charCount);
+            }
+            decoded = result;
+        }
+        return result;
+    }
+}
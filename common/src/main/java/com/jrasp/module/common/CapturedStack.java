@@ -0,0 +1,70 @@
+package com.jrasp.module.common;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+// 采集到的调用栈, 栈帧保持原始对象(StackTraceElement 或 StackWalker.StackFrame)
+// 只有在序列化输出时才通过 get 转换为字符串; 输出顺序与 StackTrace.getStackTrace 一致(由外到内)
+public class CapturedStack extends AbstractList<String> implements RandomAccess {
+
+    public final static CapturedStack EMPTY = new CapturedStack(null, new Object[0], 0);
+
+    private final StackCapturer capturer;
+
+    // 栈帧由内到外存放, frames[0] 是被 hook 的方法
+    private final Object[] frames;
+
+    private final int size;
+
+    // 栈指纹, 0 表示还没有计算
+    private long fingerprint;
+
+    CapturedStack(StackCapturer capturer, Object[] frames, int size) {
+        this.capturer = capturer;
+        this.frames = frames;
+        this.size = size;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return String.valueOf(frames[size - 1 - index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // 原始栈帧, index 0 为离 hook 点最近的栈帧
+    public Object getFrame(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return frames[index];
+    }
+
+    // 栈指纹: 对每个栈帧的类名、方法名、行号做滚动hash, 不需要把栈帧转换为字符串
+    public long fingerprint() {
+        long h = fingerprint;
+        if (h == 0) {
+            h = 0xcbf29ce484222325L;
+            for (int i = 0; i < size; i++) {
+                h = (h ^ capturer.hashFrame(frames[i])) * 0x100000001b3L;
+            }
+            // murmur3 fmix64
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            if (h == 0) {
+                h = 1;
+            }
+            fingerprint = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,59 @@
+package com.jrasp.module.common;
+
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// 按 Class 缓存解析结果, 适合在 hook 点中按实现类缓存 MemberAccessor 或者由它组成的提取器:
+// jdk7+ 使用 ClassValue, 缓存保存在 Class 上, 应用卸载时随 Class 一起回收
+// jdk6 使用 WeakHashMap, value 使用软引用, 避免 value 强引用 Class 导致应用的类加载器无法回收
+public abstract class ClassKeyedCache<V> {
+
+    public interface Loader<V> {
+        V load(Class<?> clazz);
+    }
+
+    protected final Loader<V> loader;
+
+    protected ClassKeyedCache(Loader<V> loader) {
+        this.loader = loader;
+    }
+
+    public abstract V get(Class<?> clazz);
+
+    @SuppressWarnings("unchecked")
+    public static <V> ClassKeyedCache<V> create(Loader<V> loader) {
+        if (JavaVersionUtils.isGreaterThanJava6()) {
+            try {
+                // 反射加载, 避免jdk6加载 ClassValue
+                Class<?> clazz = Class.forName("com.jrasp.module.common.ClassValueClassKeyedCache");
+                return (ClassKeyedCache<V>) clazz.getConstructor(Loader.class).newInstance(loader);
+            } catch (Throwable e) {
+                // ignore, 降级为 WeakHashMap
+            }
+        }
+        return new WeakClassKeyedCache<V>(loader);
+    }
+
+    static class WeakClassKeyedCache<V> extends ClassKeyedCache<V> {
+
+        private final Map<Class<?>, SoftReference<V>> cache =
+                Collections.synchronizedMap(new WeakHashMap<Class<?>, SoftReference<V>>());
+
+        WeakClassKeyedCache(Loader<V> loader) {
+            super(loader);
+        }
+
+        @Override
+        public V get(Class<?> clazz) {
+            SoftReference<V> reference = cache.get(clazz);
+            V value = reference != null ? reference.get() : null;
+            if (value == null) {
+                value = loader.load(clazz);
+                cache.put(clazz, new SoftReference<V>(value));
+            }
+            return value;
+        }
+    }
+}
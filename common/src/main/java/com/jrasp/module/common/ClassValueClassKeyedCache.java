@@ -0,0 +1,21 @@
+package com.jrasp.module.common;
+
+// jdk7+ 的实现
+class ClassValueClassKeyedCache<V> extends ClassKeyedCache<V> {
+
+    private final ClassValue<V> cache = new ClassValue<V>() {
+        @Override
+        protected V computeValue(Class<?> type) {
+            return loader.load(type);
+        }
+    };
+
+    public ClassValueClassKeyedCache(Loader<V> loader) {
+        super(loader);
+    }
+
+    @Override
+    public V get(Class<?> clazz) {
+        return cache.get(clazz);
+    }
+}
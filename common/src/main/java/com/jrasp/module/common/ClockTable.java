@@ -0,0 +1,175 @@
+package com.jrasp.module.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// 组相联的定长缓存表, 每组 4 个位置, 组内按 CLOCK 近似 LRU 淘汰; 查询无锁, 写入使用 CAS
+// 条目按 64 位 hash 定位, key 为 null 时只比较 hash; invalidate 时代数加一, 旧代数的条目不再命中
+public class ClockTable<K, V> {
+
+    private final static int WAYS = 4;
+
+    private final AtomicReferenceArray<Entry<K, V>> entries;
+
+    // 每组的 CLOCK 指针
+    private final AtomicIntegerArray hands;
+
+    private final int setMask;
+
+    private volatile int generation;
+
+    private final StripedCounter hits = new StripedCounter();
+
+    private final StripedCounter misses = new StripedCounter();
+
+    private final StripedCounter evictions = new StripedCounter();
+
+    public ClockTable(int capacity) {
+        int sets = 1;
+        while (sets * WAYS < capacity) {
+            sets <<= 1;
+        }
+        this.entries = new AtomicReferenceArray<Entry<K, V>>(sets * WAYS);
+        this.hands = new AtomicIntegerArray(sets);
+        this.setMask = sets - 1;
+    }
+
+    // key 为 null 时只比较 hash, 没有时返回 null
+    public V get(long hash, K key) {
+        int base = setIndex(hash) * WAYS;
+        int current = generation;
+        for (int i = 0; i < WAYS; i++) {
+            Entry<K, V> entry = entries.get(base + i);
+            if (entry != null && entry.hash == hash && entry.generation == current
+                    && (key == null || key.equals(entry.key))) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hits.increment();
+                return entry.value;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    // 计算 value 之前读取, 与 value 一起传给 put
+    public int getGeneration() {
+        return generation;
+    }
+
+    public void put(long hash, K key, V value) {
+        put(hash, key, value, generation);
+    }
+
+    // generation 为计算 value 之前读取的值, 期间调用过 invalidate 时不写入
+    public void put(long hash, K key, V value, int generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        int set = setIndex(hash);
+        int base = set * WAYS;
+        // 写入期间再次 invalidate 时, 条目的代数已经过期, 查询时不会命中
+        Entry<K, V> entry = new Entry<K, V>(hash, key, value, generation);
+        // 优先使用空位和已失效的位置
+        for (int i = 0; i < WAYS; i++) {
+            Entry<K, V> old = entries.get(base + i);
+            if ((old == null || old.generation != generation) && entries.compareAndSet(base + i, old, entry)) {
+                return;
+            }
+        }
+        // CLOCK: 清除访问标记, 淘汰第一个没有被访问过的位置; 最多转两圈
+        for (int n = 0; n < WAYS * 2; n++) {
+            int index = base + (hands.getAndIncrement(set) & (WAYS - 1));
+            Entry<K, V> old = entries.get(index);
+            if (old != null && old.referenced) {
+                old.referenced = false;
+            } else if (entries.compareAndSet(index, old, entry)) {
+                evictions.increment();
+                return;
+            }
+        }
+    }
+
+    // 清空所有条目
+    public synchronized void invalidate() {
+        generation++;
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+
+    // 定期调用: 上次清理之后没有访问过的条目被移除
+    public void sweep() {
+        for (int i = 0; i < entries.length(); i++) {
+            Entry<K, V> entry = entries.get(i);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+            } else {
+                entries.compareAndSet(i, entry, null);
+            }
+        }
+    }
+
+    // 当前有效条目的值, 用于查询命令
+    public List<V> values() {
+        List<V> values = new ArrayList<V>();
+        int current = generation;
+        for (int i = 0; i < entries.length(); i++) {
+            Entry<K, V> entry = entries.get(i);
+            if (entry != null && entry.generation == current) {
+                values.add(entry.value);
+            }
+        }
+        return values;
+    }
+
+    public Map<String, Object> status() {
+        int size = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            if (entries.get(i) != null) {
+                size++;
+            }
+        }
+        Map<String, Object> status = new LinkedHashMap<String, Object>(8);
+        status.put("capacity", entries.length());
+        status.put("size", size);
+        status.put("hits", hits.sum());
+        status.put("misses", misses.sum());
+        status.put("evictions", evictions.sum());
+        return status;
+    }
+
+    private int setIndex(long hash) {
+        int h = (int) (hash ^ (hash >>> 32));
+        return (h ^ (h >>> 16)) & setMask;
+    }
+
+    private static class Entry<K, V> {
+
+        final long hash;
+
+        final K key;
+
+        final V value;
+
+        final int generation;
+
+        // CLOCK 访问标记, 并发读写不需要精确
+        boolean referenced;
+
+        Entry(long hash, K key, V value, int generation) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+}
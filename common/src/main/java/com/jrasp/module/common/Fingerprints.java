@@ -0,0 +1,37 @@
+package com.jrasp.module.common;
+
+// 64位指纹: FNV-1a 滚动hash, 最后用 murmur3 fmix64 打散
+public class Fingerprints {
+
+    public final static long SEED = 0xcbf29ce484222325L;
+
+    private final static long PRIME = 0x100000001b3L;
+
+    public static long update(long h, long value) {
+        return (h ^ value) * PRIME;
+    }
+
+    public static long update(long h, CharSequence value) {
+        if (value == null) {
+            return update(h, 0L);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * PRIME;
+        }
+        return h;
+    }
+
+    public static long fingerprint(CharSequence value) {
+        return mix(update(SEED, value));
+    }
+
+    // murmur3 fmix64, 结果不为0
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
@@ -0,0 +1,46 @@
+package com.jrasp.module.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 单个 hook 点的耗时分布和命中、告警、阻断次数
+public class HookMetrics {
+
+    private final LogLinearHistogram latency = new LogLinearHistogram();
+
+    private final StripedCounter alerts = new StripedCounter();
+
+    private final StripedCounter blocks = new StripedCounter();
+
+    // 记录一次 hook 调用的耗时, 单位纳秒
+    public void record(long nanos) {
+        latency.record(nanos);
+    }
+
+    public void alert() {
+        alerts.increment();
+    }
+
+    public void block() {
+        blocks.increment();
+    }
+
+    public Map<String, Object> snapshot() {
+        LogLinearHistogram.Snapshot snapshot = latency.snapshot();
+        Map<String, Object> result = new LinkedHashMap<String, Object>(16);
+        result.put("hits", snapshot.getCount());
+        result.put("alerts", alerts.sum());
+        result.put("blocks", blocks.sum());
+        result.put("p50Nanos", snapshot.percentile(0.5));
+        result.put("p99Nanos", snapshot.percentile(0.99));
+        result.put("p999Nanos", snapshot.percentile(0.999));
+        result.put("maxNanos", snapshot.getMax());
+        return result;
+    }
+
+    public void reset() {
+        latency.reset();
+        alerts.reset();
+        blocks.reset();
+    }
+}
@@ -0,0 +1,125 @@
+package com.jrasp.module.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 对数线性直方图: 每个2的幂区间再等分为8个子区间, 相对误差不超过 1/8
+// 按线程分段记录, 记录时只有一次原子自增, 没有锁
+public class LogLinearHistogram {
+
+    private final static int SUB_BUCKET_BITS = 3;
+
+    private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // 可记录的最大值 2^40-1, 按纳秒计约18分钟, 超出的值记为最大值
+    private final static int MAX_BITS = 40;
+
+    private final static long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    final static int BUCKET_COUNT = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts;
+
+    private final int mask;
+
+    private final AtomicLong max = new AtomicLong();
+
+    public LogLinearHistogram() {
+        int stripes = StripedCounter.Stripes.count();
+        this.counts = new AtomicLongArray(stripes * BUCKET_COUNT);
+        this.mask = stripes - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        int stripe = StripedCounter.Stripes.index(mask);
+        counts.getAndIncrement(stripe * BUCKET_COUNT + bucketIndex(value));
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.get(i);
+            buckets[i % BUCKET_COUNT] += count;
+            total += count;
+        }
+        return new Snapshot(buckets, total, max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0L);
+        }
+        max.set(0L);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // 桶内的最大值
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket) << shift) + (1L << shift) - 1;
+    }
+
+    public static class Snapshot {
+
+        private final long[] buckets;
+
+        private final long count;
+
+        private final long max;
+
+        Snapshot(long[] buckets, long count, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        // 分位数, quantile 取值 0~1
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            if (rank < 1) {
+                rank = 1;
+            }
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.jrasp.module.common;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// 已经解析好的字段或者无参方法, 调用时不再查找、不再修改 accessible
+// jdk7+ 转换为 MethodHandle; jdk6 或者转换失败时使用创建时设置过 accessible 的反射对象
+// 只保存在按实现类的缓存(ClassKeyedCache)中, 不单独持有 Class
+public abstract class MemberAccessor {
+
+    interface Factory {
+        MemberAccessor create(AccessibleObject member) throws Throwable;
+    }
+
+    private final static Factory METHOD_HANDLES = methodHandles();
+
+    public abstract Object get(Object target) throws Throwable;
+
+    // member 为 Field 或者无参 Method; jdk9+ 模块不允许访问时抛出 RuntimeException
+    public static MemberAccessor of(AccessibleObject member) {
+        member.setAccessible(true);
+        if (METHOD_HANDLES != null) {
+            try {
+                return METHOD_HANDLES.create(member);
+            } catch (Throwable e) {
+                // ignore, 降级为反射
+            }
+        }
+        return member instanceof Field ? new FieldAccessor((Field) member) : new MethodAccessor((Method) member);
+    }
+
+    private static Factory methodHandles() {
+        if (JavaVersionUtils.isGreaterThanJava6()) {
+            try {
+                // 反射加载, 避免jdk6加载 MethodHandle
+                Class<?> clazz = Class.forName("com.jrasp.module.common.MethodHandleAccessorFactory");
+                return (Factory) clazz.newInstance();
+            } catch (Throwable e) {
+                // ignore
+            }
+        }
+        return null;
+    }
+
+    static class FieldAccessor extends MemberAccessor {
+
+        private final Field field;
+
+        FieldAccessor(Field field) {
+            this.field = field;
+        }
+
+        @Override
+        public Object get(Object target) throws Throwable {
+            return field.get(target);
+        }
+    }
+
+    static class MethodAccessor extends MemberAccessor {
+
+        private final Method method;
+
+        MethodAccessor(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        public Object get(Object target) throws Throwable {
+            return method.invoke(target);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.jrasp.module.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// jdk7+ 的实现, 通过 MethodHandle 读取字段或者调用无参方法
+class MethodHandleAccessorFactory implements MemberAccessor.Factory {
+
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    @Override
+    public MemberAccessor create(AccessibleObject member) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle = member instanceof Field
+                ? lookup.unreflectGetter((Field) member)
+                : lookup.unreflect((Method) member);
+        return new MethodHandleAccessor(handle.asType(GETTER_TYPE));
+    }
+
+    static class MethodHandleAccessor extends MemberAccessor {
+
+        private final MethodHandle handle;
+
+        MethodHandleAccessor(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Object get(Object target) throws Throwable {
+            return (Object) handle.invokeExact(target);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.jrasp.module.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// hook 点指标, 按 类名#方法名 区分; 查找时不拼接字符串
+public class MetricsRegistry {
+
+    private final ConcurrentMap<String, ConcurrentMap<String, HookMetrics>> hooks =
+            new ConcurrentHashMap<String, ConcurrentMap<String, HookMetrics>>();
+
+    public HookMetrics hook(String className, String methodName) {
+        ConcurrentMap<String, HookMetrics> methods = hooks.get(className);
+        if (methods == null) {
+            ConcurrentMap<String, HookMetrics> created = new ConcurrentHashMap<String, HookMetrics>(4);
+            methods = hooks.putIfAbsent(className, created);
+            if (methods == null) {
+                methods = created;
+            }
+        }
+        HookMetrics metrics = methods.get(methodName);
+        if (metrics == null) {
+            HookMetrics created = new HookMetrics();
+            metrics = methods.putIfAbsent(methodName, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new TreeMap<String, Object>();
+        for (Map.Entry<String, ConcurrentMap<String, HookMetrics>> classEntry : hooks.entrySet()) {
+            for (Map.Entry<String, HookMetrics> methodEntry : classEntry.getValue().entrySet()) {
+                result.put(classEntry.getKey() + "#" + methodEntry.getKey(), methodEntry.getValue().snapshot());
+            }
+        }
+        return result;
+    }
+
+    public void reset() {
+        for (ConcurrentMap<String, HookMetrics> methods : hooks.values()) {
+            for (HookMetrics metrics : methods.values()) {
+                metrics.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.jrasp.module.common;
+
+import com.jrasp.api.json.JSONObject;
+import com.jrasp.api.log.Log;
+import com.jrasp.api.model.RestResultUtils;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+// 各模块相同的 @Command 实现, 模块的命令方法只负责转发
+// 日志和 json 由模块注入(@Resource), 每次调用时传入
+public class ModuleCommands {
+
+    // 告警队列策略: overflowPolicy=drop_newest|drop_oldest|block
+    public static void alert(String module, AlertPipeline<?> alertPipeline, Map<String, String> parameterMap,
+                             PrintWriter writer, JSONObject jsonObject, Log logger) {
+        OverflowPolicy overflowPolicy = OverflowPolicy.parse(parameterMap.get("overflowPolicy"), alertPipeline.getOverflowPolicy());
+        alertPipeline.setOverflowPolicy(overflowPolicy);
+        logger.info("{} alert overflow policy: {}", module, overflowPolicy);
+        print(writer, jsonObject, "更新告警队列策略", alertPipeline.status());
+    }
+
+    // 告警限流: rate 为每秒令牌数, burst 为桶容量, 参数错误时保留原来的配置
+    public static void rateLimit(String module, AlertRateLimiter alertRateLimiter, Map<String, String> parameterMap,
+                                 PrintWriter writer, JSONObject jsonObject, Log logger) {
+        String rateParam = parameterMap.get("rate");
+        String burstParam = parameterMap.get("burst");
+        try {
+            double rate = rateParam != null ? Double.parseDouble(rateParam) : alertRateLimiter.getRate();
+            int burst = burstParam != null ? Integer.parseInt(burstParam) : alertRateLimiter.getBurst();
+            alertRateLimiter.configure(rate, burst);
+        } catch (NumberFormatException e) {
+            logger.warn("{} alert rate limit param error: {}", module, e.getMessage());
+        }
+        logger.info("{} alert rate limit: {}", module, alertRateLimiter.status());
+        print(writer, jsonObject, "更新告警限流配置", alertRateLimiter.status());
+    }
+
+    // 非请求线程的检测策略: background=full|light|skip, 返回新的策略, 由模块保存
+    public static ThreadPolicy policy(String module, ThreadPolicy backgroundPolicy, Map<String, String> parameterMap,
+                                      PrintWriter writer, JSONObject jsonObject, Log logger) {
+        ThreadPolicy policy = ThreadPolicy.parse(parameterMap.get("background"), backgroundPolicy);
+        logger.info("{} background thread policy: {}", module, policy);
+        print(writer, jsonObject, "更新非请求线程检测策略", policy.name());
+        return policy;
+    }
+
+    // hook 耗时统计, reset=true 时查询之后清零
+    public static void metrics(MetricsRegistry metricsRegistry, Map<String, String> parameterMap,
+                               PrintWriter writer, JSONObject jsonObject) {
+        Object snapshot = metricsRegistry.snapshot();
+        if (Boolean.parseBoolean(parameterMap.get("reset"))) {
+            metricsRegistry.reset();
+        }
+        print(writer, jsonObject, "hook 耗时统计", snapshot);
+    }
+
+    public static void print(PrintWriter writer, JSONObject jsonObject, String message, Object data) {
+        writer.println(jsonObject.toJSONString(RestResultUtils.success(message, data)));
+        writer.flush();
+        writer.close();
+    }
+}
@@ -0,0 +1,19 @@
+package com.jrasp.module.common;
+
+// 告警队列满时的处理策略
+public enum OverflowPolicy {
+    DROP_NEWEST, // 丢弃当前告警
+    DROP_OLDEST, // 丢弃队列中最早的告警
+    BLOCK;       // 阻塞业务线程直到队列有空位
+
+    public static OverflowPolicy parse(String value, OverflowPolicy defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.jrasp.module.common;
+
+// 线程内的重入标记: hook 点之间存在调用关系时(例如 Files.newInputStream 调用 newByteChannel), 只检测最外层的调用
+// enter 返回 true 的调用在 afterReturning/afterThrowing 中 exit; 阻断时 after 可能不会执行, 在抛出异常之前 exit
+// 外层调用拿不到检测所需的数据时(例如连接池代理), 可以每一层都 enter, 由第一个完成检测的调用 mark, 内层调用看到标记后跳过
+public class ReentryGuard {
+
+    // [0] 嵌套深度, [1] 标记时的深度, 0 表示当前调用链还没有检测过
+    private final ThreadLocal<int[]> state = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[2];
+        }
+    };
+
+    // 返回 true 表示当前是最外层的调用
+    public boolean enter() {
+        int[] current = state.get();
+        if (current[0]++ == 0) {
+            current[1] = 0;
+            return true;
+        }
+        return false;
+    }
+
+    public void exit() {
+        int[] current = state.get();
+        // 阻断时 exit 可能被调用两次
+        if (current[0] > 0 && --current[0] == 0) {
+            current[1] = 0;
+        }
+    }
+
+    // 标记当前调用链已经检测过, 最外层的调用 exit 之后清除
+    public void mark() {
+        int[] current = state.get();
+        current[1] = current[0];
+    }
+
+    public boolean isMarked() {
+        return state.get()[1] != 0;
+    }
+
+    // 当前调用是否是 mark 的那一层, 在 exit 之前调用
+    public boolean isMarker() {
+        int[] current = state.get();
+        return current[1] != 0 && current[1] == current[0];
+    }
+}
@@ -1,9 +1,40 @@
 package com.jrasp.module.common;
 
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 
 public class ReflectUtils {
 
+    // 查找无参方法, 包括父类中非 public 的; 不存在时返回 null
+    // 在 hook 点中调用时用 MemberAccessor.of 转换一次, 按实现类缓存(ClassKeyedCache)
+    public static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            // 继续查找非 public 的方法
+        }
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredMethod(name);
+            } catch (NoSuchMethodException e) {
+                // 父类中查找
+            }
+        }
+        return null;
+    }
+
+    // 查找字段, 包括父类中的; 不存在时返回 null
+    public static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                // 父类中查找
+            }
+        }
+        return null;
+    }
+
     public static Method getMethod(final Class<?> clazz, final String name, final Class<?>... parameterClassArray) {
         try {
             return clazz.getMethod(name, parameterClassArray);
@@ -0,0 +1,367 @@
+package com.jrasp.module.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 请求上下文, 由 tomcat、jetty、weblogic 模块在请求开始时填充, 每个线程复用同一个对象
+// 每个模块都有自己的类加载器, 模块之间只能传递jdk的类型: 上下文以定长数组的形式放在 requestInfo 中,
+// 数组下标在各个模块中编译自同一份代码, 保持一致
+// 请求开始时只保存请求对象和方法、协议、路径; 本机地址、调用方地址、参数map、cookie 在检测模块第一次读取时
+// 才从请求对象中获取(参数map会解析表单请求体), 槽位中先放 jdk 的 Callable, 读取之后替换为结果
+public class RequestContext {
+
+    // 容器模块实现, 在请求线程中调用; 不能触发 dns 反查
+    public interface Resolver {
+        String localAddr(Object request);
+
+        String remoteAddr(Object request);
+
+        Map<String, String[]> parameterMap(Object request);
+
+        Object[] cookies(Object request);
+    }
+
+    // 上下文数组在 requestInfo 中的 key
+    public final static String KEY = "jrasp.request.context";
+
+    private final static int LOCAL_ADDR = 0;
+    private final static int METHOD = 1;
+    private final static int PROTOCOL = 2;
+    private final static int REMOTE_HOST = 3;
+    private final static int REQUEST_URI = 4;
+    private final static int PARAMETER_MAP = 5;
+    private final static int COOKIES = 6;
+    private final static int PARAMETER_BODY = 7;
+    private final static int SERVER = 8;
+    private final static int TIMINGS = 9;
+    private final static int ACTIVE = 10;
+    private final static int SLOT_COUNT = 11;
+
+    // 耗时统计, 单位纳秒
+    private final static int PARAMETER_TIME = 0;
+    private final static int BODY_TIME = 1;
+    // 请求序号, 每个请求不同; 检测模块用来判断按请求缓存的数据是否过期
+    private final static int SEQUENCE = 2;
+
+    private final static AtomicLong SEQUENCES = new AtomicLong();
+
+    private final Object[] slots = new Object[SLOT_COUNT];
+
+    private final long[] timings = new long[3];
+
+    private final BodyTap body = new BodyTap();
+
+    // 读取请求体出错之后不再截取
+    private boolean bodyStopped;
+
+    private final String server;
+
+    // 延迟获取的槽位, 每个线程创建一次
+    private final Lazy[] lazies = {new Lazy(LOCAL_ADDR), new Lazy(REMOTE_HOST), new Lazy(PARAMETER_MAP), new Lazy(COOKIES)};
+
+    private Object request;
+
+    private Resolver resolver;
+
+    public RequestContext(String server) {
+        this.server = server;
+        recycle();
+    }
+
+    // 请求开始时调用, 清除上一个请求的数据
+    public void recycle() {
+        Arrays.fill(slots, null);
+        Arrays.fill(timings, 0L);
+        timings[SEQUENCE] = SEQUENCES.incrementAndGet();
+        body.clear();
+        bodyStopped = false;
+        request = null;
+        resolver = null;
+        slots[SERVER] = server;
+        slots[TIMINGS] = timings;
+    }
+
+    // 放入当前线程的 requestInfo 中, 其他模块通过 snapshot 读取; 同时标记请求开始
+    public void attach(Map<String, Object> requestInfo) {
+        slots[ACTIVE] = Boolean.TRUE;
+        requestInfo.put(KEY, slots);
+    }
+
+    // 请求结束时调用, 上下文保留到下一个请求开始, 但不再标记为请求中
+    public void exit() {
+        slots[ACTIVE] = null;
+        // 请求对象会被容器回收复用, 没有读取过的属性不再获取
+        for (Lazy lazy : lazies) {
+            if (slots[lazy.slot] == lazy) {
+                slots[lazy.slot] = null;
+            }
+        }
+        request = null;
+        resolver = null;
+    }
+
+    // 保存请求对象, 延迟获取的属性在第一次读取时通过 resolver 获取
+    public void setRequest(Object request, Resolver resolver) {
+        this.request = request;
+        this.resolver = resolver;
+        for (Lazy lazy : lazies) {
+            slots[lazy.slot] = lazy;
+        }
+    }
+
+    public void setLocalAddr(String localAddr) {
+        slots[LOCAL_ADDR] = localAddr;
+    }
+
+    public void setMethod(String method) {
+        slots[METHOD] = method;
+    }
+
+    public void setProtocol(String protocol) {
+        slots[PROTOCOL] = protocol;
+    }
+
+    // 调用方地址, 只使用 ip, 不反查主机名
+    public void setRemoteHost(String remoteHost) {
+        slots[REMOTE_HOST] = remoteHost;
+    }
+
+    public void setRequestURI(String requestURI) {
+        slots[REQUEST_URI] = requestURI;
+    }
+
+    public void setParameterMap(Map<String, String[]> parameterMap) {
+        slots[PARAMETER_MAP] = parameterMap;
+    }
+
+    public void setCookies(Object[] cookies) {
+        slots[COOKIES] = cookies;
+    }
+
+    // 容器读取请求体之后调用, 只复制到定长缓冲中, 不解码
+    public void appendBody(byte[] b, int off, int len) {
+        if (bodyStopped) {
+            return;
+        }
+        body.append(b, off, len);
+        if (!body.isEmpty()) {
+            slots[PARAMETER_BODY] = body;
+        }
+    }
+
+    public void appendBody(char[] c, int off, int len) {
+        if (bodyStopped) {
+            return;
+        }
+        body.append(c, off, len);
+        if (!body.isEmpty()) {
+            slots[PARAMETER_BODY] = body;
+        }
+    }
+
+    // 容器读取请求体抛出异常时调用, 已经截取的内容保留
+    public void stopBody() {
+        bodyStopped = true;
+    }
+
+    public void setParameterTime(long nanos) {
+        timings[PARAMETER_TIME] = nanos;
+    }
+
+    public void addBodyTime(long nanos) {
+        timings[BODY_TIME] += nanos;
+    }
+
+    public long getBodyTime() {
+        return timings[BODY_TIME];
+    }
+
+    // 检测模块读取当前线程的 requestInfo: 注入的 ThreadLocal 在 get 时会创建空 map,
+    // 非请求线程上立即移除, 不在后台线程上残留; 没有请求信息时返回 null
+    public static HashMap<String, Object> current(ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal) {
+        HashMap<String, Object> requestInfo = requestInfoThreadLocal.get();
+        if (requestInfo != null && requestInfo.isEmpty()) {
+            requestInfoThreadLocal.remove();
+            return null;
+        }
+        return requestInfo;
+    }
+
+    // 告警时获取上下文的只读快照, 当前线程没有请求上下文时返回 EMPTY
+    public static Snapshot snapshot(Map<String, Object> requestInfo) {
+        Object[] slots = slots(requestInfo);
+        return slots == null ? Snapshot.EMPTY : new Snapshot(slots);
+    }
+
+    // 当前线程是否正在处理请求(容器模块在请求开始和结束时维护)
+    public static boolean isActive(Map<String, Object> requestInfo) {
+        Object[] slots = slots(requestInfo);
+        return slots != null && slots[ACTIVE] == Boolean.TRUE;
+    }
+
+    // 在请求线程中直接读取参数map, 不复制; 不能在请求结束之后使用
+    @SuppressWarnings("unchecked")
+    public static Map<String, String[]> parameterMap(Map<String, Object> requestInfo) {
+        Object[] slots = slots(requestInfo);
+        if (slots == null) {
+            return null;
+        }
+        Object parameterMap = value(slots, PARAMETER_MAP);
+        return parameterMap instanceof Map ? (Map<String, String[]>) parameterMap : null;
+    }
+
+    // 在请求线程中直接读取请求URI, 没有请求上下文时返回 null
+    public static String requestURI(Map<String, Object> requestInfo) {
+        Object[] slots = slots(requestInfo);
+        return slots == null ? null : (String) slots[REQUEST_URI];
+    }
+
+    // 在请求线程中直接读取请求体中的参数, 不复制, 第一次访问时解码; 没有时返回 null
+    public static CharSequence parameterBody(Map<String, Object> requestInfo) {
+        Object[] slots = slots(requestInfo);
+        return slots == null ? null : (CharSequence) slots[PARAMETER_BODY];
+    }
+
+    // 当前请求的序号, 没有请求上下文时返回 0
+    public static long sequence(Map<String, Object> requestInfo) {
+        Object[] slots = slots(requestInfo);
+        if (slots == null) {
+            return 0;
+        }
+        Object timings = slots[TIMINGS];
+        return timings instanceof long[] ? ((long[]) timings)[SEQUENCE] : 0;
+    }
+
+    // 延迟获取的槽位在这里获取并替换为结果, 获取失败时为 null
+    private static Object value(Object[] slots, int index) {
+        Object value = slots[index];
+        if (value instanceof Callable) {
+            try {
+                value = ((Callable<?>) value).call();
+            } catch (Exception e) {
+                value = null;
+            }
+            slots[index] = value;
+        }
+        return value;
+    }
+
+    private static Object[] slots(Map<String, Object> requestInfo) {
+        if (requestInfo == null) {
+            return null;
+        }
+        Object value = requestInfo.get(KEY);
+        if (!(value instanceof Object[]) || ((Object[]) value).length != SLOT_COUNT) {
+            return null;
+        }
+        return (Object[]) value;
+    }
+
+    private class Lazy implements Callable<Object> {
+
+        private final int slot;
+
+        Lazy(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Object call() {
+            Object request = RequestContext.this.request;
+            Resolver resolver = RequestContext.this.resolver;
+            if (request == null || resolver == null) {
+                return null;
+            }
+            switch (slot) {
+                case LOCAL_ADDR:
+                    return resolver.localAddr(request);
+                case REMOTE_HOST:
+                    return resolver.remoteAddr(request);
+                case PARAMETER_MAP:
+                    return resolver.parameterMap(request);
+                default:
+                    return resolver.cookies(request);
+            }
+        }
+    }
+
+    // 请求上下文的只读快照, 告警在后台线程中输出时请求可能已经结束, 可变的部分在这里复制
+    public static class Snapshot {
+
+        public final static Snapshot EMPTY = new Snapshot(new Object[SLOT_COUNT]);
+
+        private final Object[] values;
+
+        private final long[] timings;
+
+        @SuppressWarnings("unchecked")
+        private Snapshot(Object[] slots) {
+            for (int i = 0; i < slots.length; i++) {
+                value(slots, i);
+            }
+            this.values = slots.clone();
+            // 容器会在请求结束后清空并复用参数map
+            Object parameterMap = values[PARAMETER_MAP];
+            if (parameterMap instanceof Map) {
+                values[PARAMETER_MAP] = new HashMap<String, String[]>((Map<String, String[]>) parameterMap);
+            }
+            // 请求体在这里解码, 没有告警的请求不解码
+            Object parameterBody = values[PARAMETER_BODY];
+            if (parameterBody != null) {
+                values[PARAMETER_BODY] = parameterBody.toString();
+            }
+            Object timings = values[TIMINGS];
+            this.timings = timings instanceof long[] ? ((long[]) timings).clone() : null;
+        }
+
+        public boolean isEmpty() {
+            return values[SERVER] == null;
+        }
+
+        public String getRequestURI() {
+            return (String) values[REQUEST_URI];
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map<String, String[]> getParameterMap() {
+            return (Map<String, String[]>) values[PARAMETER_MAP];
+        }
+
+        public String getParameterBody() {
+            return (String) values[PARAMETER_BODY];
+        }
+
+        // 按照原有的字段名输出
+        public void copyTo(Map<String, Object> result) {
+            if (isEmpty()) {
+                return;
+            }
+            putIfNotNull(result, "localAddr", values[LOCAL_ADDR]);
+            putIfNotNull(result, "method", values[METHOD]);
+            putIfNotNull(result, "protocol", values[PROTOCOL]);
+            putIfNotNull(result, "remoteHost", values[REMOTE_HOST]);
+            putIfNotNull(result, "requestURI", values[REQUEST_URI]);
+            putIfNotNull(result, "parameterMap", values[PARAMETER_MAP]);
+            putIfNotNull(result, "cookies", values[COOKIES]);
+            putIfNotNull(result, "parameterBody", values[PARAMETER_BODY]);
+            if (timings != null) {
+                String server = (String) values[SERVER];
+                if (timings[PARAMETER_TIME] > 0) {
+                    result.put(server + ".request.parameter.time", timings[PARAMETER_TIME] / 1000000.0);
+                }
+                if (timings[BODY_TIME] > 0) {
+                    result.put(server + ".request.body.time", timings[BODY_TIME] / 1000000.0);
+                }
+            }
+        }
+
+        private static void putIfNotNull(Map<String, Object> result, String key, Object value) {
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.jrasp.module.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// 有界无锁队列(Dmitry Vyukov bounded MPMC queue)
+// 多个业务线程写入; 消费线程读取, 丢弃最旧数据时写入线程也会读取
+public class RingBuffer<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+
+    // 每个槽位的序号, 用来判断槽位是否可写、可读
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong tail = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    // 队列已满时返回 false
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long t = tail.get();
+            int index = (int) t & mask;
+            long diff = sequences.get(index) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    buffer.lazySet(index, e);
+                    sequences.set(index, t + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    // 队列为空时返回 null
+    public E poll() {
+        while (true) {
+            long h = head.get();
+            int index = (int) h & mask;
+            long diff = sequences.get(index) - (h + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(h, h + 1)) {
+                    E e = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, h + mask + 1);
+                    return e;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+        }
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
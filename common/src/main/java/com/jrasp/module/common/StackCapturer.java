@@ -0,0 +1,72 @@
+package com.jrasp.module.common;
+
+// 调用栈采集的实现, jdk9+ 使用 StackWalker, 低版本使用 Thread.getStackTrace
+abstract class StackCapturer {
+
+    // RASP自身的栈开始位置
+    final static String JRASP_STACK_BEGIN = "java.com.jrasp.spy.Spy";
+
+    // 如果在前面这些栈帧内都没有找到 Spy, 认为不是从 hook 点调用, 不再继续查找
+    final static int SPY_SEARCH_LIMIT = 32;
+
+    abstract CapturedStack capture(int maxDepth);
+
+    // 单个栈帧的hash, 用于计算栈指纹
+    abstract int hashFrame(Object frame);
+
+    static int hashFrame(String className, String methodName, int lineNumber) {
+        int h = className.hashCode();
+        h = 31 * h + methodName.hashCode();
+        h = 31 * h + lineNumber;
+        return h;
+    }
+
+    // 栈采集自身的栈帧
+    static boolean isCapturerFrame(String className) {
+        return className.startsWith("com.jrasp.module.common.Stack") || className.equals("java.lang.Thread");
+    }
+
+    static StackCapturer create() {
+        if (JavaVersionUtils.isGreaterThanJava8()) {
+            try {
+                // 反射加载, 避免低版本jdk加载 StackWalker 相关的类
+                Class<?> clazz = Class.forName("com.jrasp.module.common.StackWalkerCapturer");
+                return (StackCapturer) clazz.newInstance();
+            } catch (Throwable e) {
+                // ignore, 降级为 Thread.getStackTrace
+            }
+        }
+        return new ThreadStackCapturer();
+    }
+
+    // jdk6~8
+    static class ThreadStackCapturer extends StackCapturer {
+
+        @Override
+        CapturedStack capture(int maxDepth) {
+            StackTraceElement[] elements = Thread.currentThread().getStackTrace();
+            int begin = 0;
+            int limit = Math.min(elements.length, SPY_SEARCH_LIMIT);
+            for (int i = 0; i < limit; i++) {
+                String className = elements[i].getClassName();
+                if (className.startsWith(JRASP_STACK_BEGIN)) {
+                    begin = i + 1;
+                    break;
+                }
+                if (begin == i && isCapturerFrame(className)) {
+                    begin = i + 1;
+                }
+            }
+            int size = Math.max(0, Math.min(maxDepth, elements.length - begin));
+            Object[] frames = new Object[size];
+            System.arraycopy(elements, begin, frames, 0, size);
+            return new CapturedStack(this, frames, size);
+        }
+
+        @Override
+        int hashFrame(Object frame) {
+            StackTraceElement element = (StackTraceElement) frame;
+            return hashFrame(element.getClassName(), element.getMethodName(), element.getLineNumber());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.jrasp.module.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 调用栈去重: 记录已经输出过的栈指纹, 同一个栈只在第一次出现(或者被淘汰之后)输出完整的栈
+// 直接映射的定长表, 无锁, 内存大小固定; 指纹冲突时新的指纹覆盖旧的
+// 带有完整栈的告警被丢弃时撤销记录(forget), 下一次出现时重新输出完整的栈
+public class StackInterner {
+
+    public final static int DEFAULT_CAPACITY = 4096;
+
+    private final AtomicLongArray table;
+
+    private final int mask;
+
+    public StackInterner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StackInterner(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.table = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    // 返回 true 表示这个栈指纹之前没有记录, 需要输出完整的栈
+    public boolean intern(long fingerprint) {
+        int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        long current = table.get(index);
+        if (current == fingerprint) {
+            return false;
+        }
+        table.lazySet(index, fingerprint);
+        return true;
+    }
+
+    // 告警中写入栈id, 只有第一次出现的栈才写入完整的栈
+    public void putStack(AlertEvent event, CapturedStack stack) {
+        long fingerprint = stack.fingerprint();
+        event.put("stackId", toStackId(fingerprint));
+        if (intern(fingerprint)) {
+            event.put("stackTrace", stack);
+        }
+    }
+
+    // 告警被丢弃时调用: 告警中带有完整的栈时撤销这个栈指纹的记录
+    public void forget(AlertEvent event) {
+        Object stack = event.get("stackTrace");
+        if (stack instanceof CapturedStack) {
+            long fingerprint = ((CapturedStack) stack).fingerprint();
+            int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+            table.compareAndSet(index, fingerprint, 0L);
+        }
+    }
+
+    // 告警队列丢弃告警时撤销其中完整栈的记录
+    public void forgetDropped(AlertPipeline<AlertEvent> alertPipeline) {
+        alertPipeline.setDropHandler(new AlertPipeline.Handler<AlertEvent>() {
+            @Override
+            public void handle(AlertEvent event) {
+                forget(event);
+            }
+        });
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0L);
+        }
+    }
+
+    public static String toStackId(long fingerprint) {
+        return Long.toHexString(fingerprint);
+    }
+}
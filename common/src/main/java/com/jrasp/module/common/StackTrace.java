@@ -5,7 +5,14 @@ import java.util.ArrayList;
 public class StackTrace {
 
     // RASP自身的栈开始位置
-    private final static String JRASP_STACK_BEGIN = "java.com.jrasp.spy.Spy";
+    private final static String JRASP_STACK_BEGIN = StackCapturer.JRASP_STACK_BEGIN;
+
+    // 默认的最大栈深度
+    public final static int DEFAULT_MAX_DEPTH = 100;
+
+    private static volatile int maxDepth = DEFAULT_MAX_DEPTH;
+
+    private final static StackCapturer CAPTURER = StackCapturer.create();
 
     // 输出调用栈
     public static ArrayList<String> getStackTrace() {
@@ -20,4 +27,26 @@ public class StackTrace {
         }
         return effectiveStacks;
     }
+
+    // 采集调用栈, 只保留离 hook 点最近的 maxDepth 个栈帧, 栈帧在输出时才转换为字符串
+    public static CapturedStack capture() {
+        return capture(maxDepth);
+    }
+
+    public static CapturedStack capture(int maxDepth) {
+        if (maxDepth <= 0) {
+            return CapturedStack.EMPTY;
+        }
+        return CAPTURER.capture(maxDepth);
+    }
+
+    public static int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public static void setMaxDepth(int maxDepth) {
+        if (maxDepth >= 0) {
+            StackTrace.maxDepth = maxDepth;
+        }
+    }
 }
@@ -0,0 +1,101 @@
+package com.jrasp.module.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// jdk9+ 使用 StackWalker 采集, 只遍历需要的栈帧, 不会生成完整的 StackTraceElement 数组
+// 编译环境是jdk8, StackWalker 相关的方法通过 MethodHandle 调用
+class StackWalkerCapturer extends StackCapturer {
+
+    private final MethodHandle walk;
+
+    private final MethodHandle getClassName;
+
+    private final MethodHandle getMethodName;
+
+    private final MethodHandle getLineNumber;
+
+    public StackWalkerCapturer() throws Throwable {
+        Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+        Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Object walker = lookup.findStatic(walkerClass, "getInstance", MethodType.methodType(walkerClass)).invoke();
+        this.walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class)).bindTo(walker);
+        this.getClassName = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class));
+        this.getMethodName = lookup.findVirtual(frameClass, "getMethodName", MethodType.methodType(String.class));
+        this.getLineNumber = lookup.findVirtual(frameClass, "getLineNumber", MethodType.methodType(int.class));
+    }
+
+    @Override
+    CapturedStack capture(int maxDepth) {
+        try {
+            return (CapturedStack) walk.invoke(new FrameCollector(maxDepth));
+        } catch (Throwable e) {
+            return CapturedStack.EMPTY;
+        }
+    }
+
+    @Override
+    int hashFrame(Object frame) {
+        try {
+            return hashFrame((String) getClassName.invoke(frame), (String) getMethodName.invoke(frame),
+                    (Integer) getLineNumber.invoke(frame));
+        } catch (Throwable e) {
+            return frame.hashCode();
+        }
+    }
+
+    private class FrameCollector implements Function<Stream<?>, CapturedStack> {
+
+        private final int maxDepth;
+
+        FrameCollector(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        public CapturedStack apply(Stream<?> stream) {
+            Object[] frames = new Object[Math.max(0, maxDepth)];
+            int size = 0;
+            int index = 0;
+            boolean spyFound = false;
+            Iterator<?> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                // 已经找到 Spy 或者超出查找范围, 栈帧数量够了就不再向下遍历
+                if (size >= frames.length && (spyFound || index >= SPY_SEARCH_LIMIT)) {
+                    break;
+                }
+                Object frame = iterator.next();
+                index++;
+                if (!spyFound && index <= SPY_SEARCH_LIMIT) {
+                    String className = getClassName(frame);
+                    if (className.startsWith(JRASP_STACK_BEGIN)) {
+                        // Spy 之前的栈帧都是RASP自身的, 丢弃
+                        spyFound = true;
+                        size = 0;
+                        continue;
+                    }
+                    if (size == 0 && isCapturerFrame(className)) {
+                        continue;
+                    }
+                }
+                if (size < frames.length) {
+                    frames[size++] = frame;
+                }
+            }
+            return new CapturedStack(StackWalkerCapturer.this, frames, size);
+        }
+
+        private String getClassName(Object frame) {
+            try {
+                return (String) getClassName.invoke(frame);
+            } catch (Throwable e) {
+                return "";
+            }
+        }
+    }
+}
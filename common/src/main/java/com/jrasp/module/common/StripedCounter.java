@@ -0,0 +1,61 @@
+package com.jrasp.module.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 按线程分段的计数器, 作用同 jdk8 的 LongAdder, 兼容jdk6
+public class StripedCounter {
+
+    // 每个分段占一个缓存行(64字节), 避免伪共享
+    private final static int PADDING = 8;
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    public StripedCounter() {
+        int stripes = Stripes.count();
+        this.cells = new AtomicLongArray(stripes * PADDING);
+        this.mask = stripes - 1;
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(Stripes.index(mask) * PADDING, delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            cells.set(i, 0L);
+        }
+    }
+
+    // 分段数量和当前线程的分段下标
+    static class Stripes {
+
+        private final static int MAX_STRIPES = 16;
+
+        static int count() {
+            int processors = Runtime.getRuntime().availableProcessors();
+            int stripes = 1;
+            while (stripes < processors && stripes < MAX_STRIPES) {
+                stripes <<= 1;
+            }
+            return stripes;
+        }
+
+        static int index(int mask) {
+            return (int) Thread.currentThread().getId() & mask;
+        }
+    }
+}
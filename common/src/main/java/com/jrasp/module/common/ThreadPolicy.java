@@ -0,0 +1,19 @@
+package com.jrasp.module.common;
+
+// 请求之外的线程(定时任务、日志输出、GC日志等)的检测策略
+public enum ThreadPolicy {
+    FULL,  // 与请求线程相同, 读取线程上残留的请求上下文
+    LIGHT, // 检测, 但不读取请求上下文
+    SKIP;  // 不检测, 直接返回
+
+    public static ThreadPolicy parse(String value, ThreadPolicy defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.jrasp.module.file;
+
+import com.jrasp.module.common.Fingerprints;
+import com.jrasp.module.common.StripedCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 文件访问画像: 按 (请求URI, 目录前缀, 操作) 统计访问次数, 内存大小固定, 与访问的文件数量无关
+// 次数记录在 count-min sketch 中(无锁), 另外保留估计次数最多的 K 个 key 的明细
+// 已经在 top-K 中的 key 只更新 sketch; 只有估计次数超过 top-K 最小值的新 key 才加锁替换
+public class AccessProfile {
+
+    public final static int DEFAULT_TOP_K = 32;
+
+    // 目录前缀最多保留的路径段数, /var/log/app/2024/x.log 记为 /var/log/app
+    public final static int PREFIX_SEGMENTS = 3;
+
+    private final static int DEPTH = 4;
+
+    private final static int WIDTH = 4096;
+
+    // top-K 中保存的 URI 最大长度
+    private final static int MAX_URI_LENGTH = 256;
+
+    private final AtomicLongArray sketch = new AtomicLongArray(DEPTH * WIDTH);
+
+    private final StripedCounter total = new StripedCounter();
+
+    private final int topK;
+
+    // 以下字段在 synchronized 中修改
+    private final Entry[] top;
+
+    private int size;
+
+    // top-K 中的 key, 复制后替换, 热路径上无锁读取
+    private volatile long[] members = new long[0];
+
+    // top-K 已满时其中最小的估计次数, 不超过它的 key 不会进入 top-K
+    private volatile long threshold;
+
+    private volatile boolean enabled;
+
+    public AccessProfile() {
+        this(DEFAULT_TOP_K);
+    }
+
+    public AccessProfile(int topK) {
+        this.topK = topK;
+        this.top = new Entry[topK];
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // path 为规范化之后的路径; 热路径上不创建对象
+    public void record(String requestURI, CharSequence path, int operation) {
+        int prefixLength = prefixLength(path, operation);
+        long h = Fingerprints.update(Fingerprints.SEED, requestURI);
+        h = Fingerprints.update(h, operation);
+        for (int i = 0; i < prefixLength; i++) {
+            h = Fingerprints.update(h, path.charAt(i));
+        }
+        long key = Fingerprints.mix(h);
+
+        // sketch 每一行加一, 估计值取各行最小值
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.incrementAndGet(row * WIDTH + ((h1 + row * h2) & (WIDTH - 1))));
+        }
+        total.increment();
+
+        if (estimate <= threshold) {
+            return;
+        }
+        long[] current = members;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == key) {
+                return;
+            }
+        }
+        offer(key, estimate, requestURI, path, prefixLength, operation);
+    }
+
+    private synchronized void offer(long key, long estimate, String requestURI, CharSequence path, int prefixLength, int operation) {
+        for (int i = 0; i < size; i++) {
+            if (top[i].key == key) {
+                return;
+            }
+        }
+        int slot;
+        if (size < topK) {
+            slot = size++;
+        } else {
+            // 替换估计次数最小的 key
+            slot = 0;
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                long count = estimate(top[i].key);
+                if (count < min) {
+                    min = count;
+                    slot = i;
+                }
+            }
+            if (estimate <= min) {
+                threshold = min;
+                return;
+            }
+        }
+        if (requestURI.length() > MAX_URI_LENGTH) {
+            requestURI = requestURI.substring(0, MAX_URI_LENGTH);
+        }
+        top[slot] = new Entry(key, requestURI, path.subSequence(0, prefixLength).toString(), operation);
+
+        long[] updated = new long[size];
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            updated[i] = top[i].key;
+            min = Math.min(min, estimate(top[i].key));
+        }
+        members = updated;
+        threshold = size < topK ? 0 : min;
+    }
+
+    private long estimate(long key) {
+        int h1 = (int) key;
+        int h2 = (int) (key >>> 32) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.get(row * WIDTH + ((h1 + row * h2) & (WIDTH - 1))));
+        }
+        return estimate;
+    }
+
+    // 按估计次数从大到小输出
+    public synchronized List<Map<String, Object>> heavyHitters() {
+        Entry[] entries = Arrays.copyOf(top, size);
+        for (int i = 0; i < entries.length; i++) {
+            entries[i].count = estimate(entries[i].key);
+        }
+        Arrays.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.count < b.count ? 1 : (a.count == b.count ? 0 : -1);
+            }
+        });
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(entries.length);
+        for (Entry entry : entries) {
+            Map<String, Object> item = new LinkedHashMap<String, Object>(8);
+            item.put("requestURI", entry.requestURI);
+            item.put("prefix", entry.prefix);
+            item.put("operation", PathRuleTrie.operationNames(entry.operation));
+            item.put("count", entry.count);
+            result.add(item);
+        }
+        return result;
+    }
+
+    // 学习模式的结果: 对估计次数不少于 minCount 的访问, 如果当前规则会检测这个目录上的这些操作,
+    // 生成一条更长前缀的规则, 在这个目录上去掉这些操作. 只按目录生成, 不会放开针对单个文件的规则
+    public synchronized List<String> suggestRules(PathRuleTrie rules, long minCount) {
+        Map<String, Integer> observed = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < size; i++) {
+            Entry entry = top[i];
+            if (estimate(entry.key) < minCount) {
+                continue;
+            }
+            Integer operations = observed.get(entry.prefix);
+            observed.put(entry.prefix, (operations == null ? 0 : operations) | entry.operation);
+        }
+        List<String> suggested = new ArrayList<String>();
+        for (Map.Entry<String, Integer> entry : observed.entrySet()) {
+            int detected = rules.match(entry.getKey());
+            if ((detected & entry.getValue()) != 0) {
+                suggested.add(PathRuleTrie.operationNames(detected & ~entry.getValue()) + ":" + entry.getKey());
+            }
+        }
+        return suggested;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<String, Object>(8);
+        status.put("enabled", enabled);
+        status.put("total", total.sum());
+        status.put("topK", topK);
+        status.put("sketchBytes", DEPTH * WIDTH * 8);
+        return status;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, 0L);
+        }
+        Arrays.fill(top, null);
+        size = 0;
+        members = new long[0];
+        threshold = 0;
+        total.reset();
+    }
+
+    // 目录前缀的长度: 去掉文件名(遍历操作的路径本身就是目录), 最多保留 PREFIX_SEGMENTS 段
+    static int prefixLength(CharSequence path, int operation) {
+        int end = path.length();
+        if (operation != PathRuleTrie.LIST) {
+            while (end > 0 && path.charAt(end - 1) != '/') {
+                end--;
+            }
+            // 去掉末尾的 /, 根目录保留
+            end = Math.max(end - 1, Math.min(1, path.length()));
+        }
+        int segments = 0;
+        for (int i = 1; i < end; i++) {
+            if (path.charAt(i) == '/' && ++segments == PREFIX_SEGMENTS) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static class Entry {
+
+        final long key;
+
+        final String requestURI;
+
+        final String prefix;
+
+        final int operation;
+
+        // 输出时的估计次数
+        long count;
+
+        Entry(long key, String requestURI, String prefix, int operation) {
+            this.key = key;
+            this.requestURI = requestURI;
+            this.prefix = prefix;
+            this.operation = operation;
+        }
+    }
+}
@@ -10,18 +10,33 @@ import com.jrasp.api.listener.ext.EventWatchBuilder;
 import com.jrasp.api.log.Log;
 import com.jrasp.api.model.RestResultUtils;
 import com.jrasp.api.resource.ModuleEventWatcher;
+import com.jrasp.module.common.AlertEvent;
+import com.jrasp.module.common.AlertPipeline;
+import com.jrasp.module.common.AlertRateLimiter;
+import com.jrasp.module.common.CapturedStack;
+import com.jrasp.module.common.Fingerprints;
+import com.jrasp.module.common.HookMetrics;
+import com.jrasp.module.common.MetricsRegistry;
+import com.jrasp.module.common.ModuleCommands;
+import com.jrasp.module.common.ReentryGuard;
+import com.jrasp.module.common.RequestContext;
+import com.jrasp.module.common.StackInterner;
 import com.jrasp.module.common.StackTrace;
+import com.jrasp.module.common.ThreadPolicy;
 import org.kohsuke.MetaInfServices;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static com.jrasp.module.common.ClassLoaderUtil.earlyLoadClass;
 
 @MetaInfServices(Module.class)
 @Information(id = "file", version = "1.0.0", author = "jrasp")
-public class FileModule implements Module, LoadCompleted {
+public class FileModule extends ModuleLifecycleAdapter implements Module {
 
     @Resource
     private Log logger;
@@ -35,15 +50,202 @@ public class FileModule implements Module, LoadCompleted {
     @Resource
     private ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal;
 
+    // 相同的调用栈只输出一次完整的栈
+    private final StackInterner stackInterner = new StackInterner();
+
+    // 告警在后台线程中序列化和输出
+    private final AlertPipeline<AlertEvent> alertPipeline = new AlertPipeline<AlertEvent>("file",
+            new AlertPipeline.Handler<AlertEvent>() {
+                @Override
+                public void handle(AlertEvent event) {
+                    logger.warn(jsonObject.toJSONString(event.toMap()));
+                }
+            });
+
+    // 告警限流: 相同 hook 点、相同内容的告警按令牌桶输出, 不影响阻断
+    private final AlertRateLimiter alertRateLimiter = new AlertRateLimiter("file");
+
+    // 请求之外的线程的检测策略
+    private volatile ThreadPolicy backgroundPolicy = ThreadPolicy.LIGHT;
+
+    // 各 hook 点的耗时分布和命中、告警、阻断次数
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
     private volatile boolean enableBlock = true;
 
+    // 命中敏感目录规则
+    private final static int SENSITIVE = 1 << 4;
+
+    // 敏感目录规则, 更新时整体替换
+    private volatile PathRuleTrie pathRules = PathRuleTrie.compile(PathRuleTrie.DEFAULT_RULES);
+
+    // 正常路径缓存, 规则更新时失效
+    private final PathVerdictCache pathCache = new PathVerdictCache();
+
+    // 请求中的文件访问画像, 默认关闭, 通过 /profile 开启学习
+    private final AccessProfile accessProfile = new AccessProfile();
+
+    // 请求中写入 web 目录的文件内容检测
+    private final WebshellSniffer webshellSniffer = new WebshellSniffer();
+
+    // nio 的 hook 点之间存在调用关系, 只检测最外层的调用
+    private final ReentryGuard nioGuard = new ReentryGuard();
+
     @Override
     public void loadCompleted() {
-        earlyLoadClass("java.io.FileInputStream", "java.io.FileOutputStream", "java.io.File", "java.io.RandomAccessFile");
+        alertPipeline.setPeriodicTask(new Runnable() {
+            @Override
+            public void run() {
+                // 输出被限流的告警汇总
+                for (Map<String, Object> summary : alertRateLimiter.drainSuppressed()) {
+                    logger.warn(jsonObject.toJSONString(summary));
+                }
+                // 清理一段时间内没有访问的路径
+                pathCache.sweep();
+                // 清理没有关闭就被回收的流的标记
+                webshellSniffer.sweep();
+            }
+        }, AlertRateLimiter.SUMMARY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        // 丢弃的告警中的完整栈没有输出, 撤销记录
+        stackInterner.forgetDropped(alertPipeline);
+        alertPipeline.start();
+        earlyLoadClass("java.io.FileInputStream", "java.io.FileOutputStream", "java.io.File", "java.io.RandomAccessFile",
+                "sun.nio.fs.UnixFileSystemProvider", "sun.nio.fs.WindowsFileSystemProvider");
         fileInputStreamHook();
         fileOutputStreamHook();
+        fileOutputStreamWriteHook();
         fileDeleteAndListHook();
         fileRandomAccessHook();
+        nioFileHook();
+    }
+
+    @Override
+    public void onUnload() throws Throwable {
+        alertPipeline.stop();
+    }
+
+    @Command("/alert")
+    public void alert(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.alert("file", alertPipeline, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/ratelimit")
+    public void rateLimit(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.rateLimit("file", alertRateLimiter, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/policy")
+    public void policy(Map<String, String> parameterMap, final PrintWriter writer) {
+        backgroundPolicy = ModuleCommands.policy("file", backgroundPolicy, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/metrics")
+    public void metrics(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.metrics(metricsRegistry, parameterMap, writer, jsonObject);
+    }
+
+    @Command("/rules")
+    public void rules(Map<String, String[]> parameterMap, final PrintWriter writer) {
+        String[] items = parameterMap.get("item");
+        String message = "更新敏感目录规则";
+        if (items != null && items.length > 0) {
+            try {
+                pathRules = PathRuleTrie.compile(items);
+                pathCache.invalidate();
+            } catch (IllegalArgumentException e) {
+                // 规则错误时保留原来的规则
+                logger.warn("file rule error: {}", e.getMessage());
+                message = "敏感目录规则错误: " + e.getMessage();
+            }
+        }
+        String result = jsonObject.toJSONString(RestResultUtils.success(message, pathRules.getRules()));
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
+    @Command("/cache")
+    public void cache(Map<String, String> parameterMap, final PrintWriter writer) {
+        String result = jsonObject.toJSONString(RestResultUtils.success("正常路径缓存统计", pathCache.status()));
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
+    @Command("/profile")
+    public void profile(Map<String, String> parameterMap, final PrintWriter writer) {
+        String learnParam = parameterMap.get("learn");
+        if (learnParam != null) {
+            boolean learn = Boolean.parseBoolean(learnParam);
+            // 开始学习时清除上一次的画像
+            if (learn && !accessProfile.isEnabled()) {
+                accessProfile.reset();
+            }
+            accessProfile.setEnabled(learn);
+            logger.info("file access profile learning: {}", learn);
+        }
+        long minCount = 1;
+        try {
+            String minCountParam = parameterMap.get("minCount");
+            if (minCountParam != null) {
+                minCount = Long.parseLong(minCountParam);
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("file profile param error: {}", e.getMessage());
+        }
+        List<String> suggestedRules = accessProfile.suggestRules(pathRules, minCount);
+        String message = "文件访问画像";
+        // 把学习到的规则追加到当前规则
+        if (Boolean.parseBoolean(parameterMap.get("apply")) && !suggestedRules.isEmpty()) {
+            List<String> items = new ArrayList<String>(pathRules.getRules());
+            items.addAll(suggestedRules);
+            pathRules = PathRuleTrie.compile(items.toArray(new String[0]));
+            pathCache.invalidate();
+            logger.info("file rules learned: {}", suggestedRules);
+            message = "应用学习到的敏感目录规则";
+        }
+        Map<String, Object> data = accessProfile.status();
+        data.put("heavyHitters", accessProfile.heavyHitters());
+        data.put("suggestedRules", suggestedRules);
+        if (Boolean.parseBoolean(parameterMap.get("reset"))) {
+            accessProfile.reset();
+        }
+        String result = jsonObject.toJSONString(RestResultUtils.success(message, data));
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
+    @Command("/sniff")
+    public void sniff(Map<String, String[]> parameterMap, final PrintWriter writer) {
+        String[] items = parameterMap.get("item");
+        String[] limitParam = parameterMap.get("limit");
+        String[] blockParam = parameterMap.get("block");
+        String message = "更新 web 目录文件内容检测配置";
+        try {
+            if (items != null && items.length > 0) {
+                webshellSniffer.setWebRoots(items);
+            }
+            if (limitParam != null && limitParam.length > 0) {
+                webshellSniffer.setLimit(Integer.parseInt(limitParam[0]));
+            }
+            if (blockParam != null && blockParam.length > 0) {
+                webshellSniffer.setBlock(Boolean.parseBoolean(blockParam[0]));
+            }
+        } catch (IllegalArgumentException e) {
+            // 配置错误时保留原来的配置
+            logger.warn("file sniff config error: {}", e.getMessage());
+            message = "web 目录文件内容检测配置错误: " + e.getMessage();
+        }
+        Map<String, Object> data = new LinkedHashMap<String, Object>(4);
+        data.put("webRoots", webshellSniffer.getWebRoots());
+        data.put("limit", webshellSniffer.getLimit());
+        data.put("block", webshellSniffer.isBlock());
+        data.put("tagged", webshellSniffer.getTaggedCount());
+        String result = jsonObject.toJSONString(RestResultUtils.success(message, data));
+        writer.println(result);
+        writer.flush();
+        writer.close();
     }
 
     @Command("/block")
@@ -70,12 +272,7 @@ public class FileModule implements Module, LoadCompleted {
                     public void before(Advice advice) throws Throwable {
                         File file = (File) advice.getParameterArray()[0];
                         String fileName = file.getPath();
-                        checkFileAndPrintLog(fileName, className, methodName);
-                    }
-
-                    @Override
-                    public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        checkFileAndPrintLog(fileName, PathRuleTrie.READ, className, methodName);
                     }
                 });
     }
@@ -93,12 +290,58 @@ public class FileModule implements Module, LoadCompleted {
                     public void before(Advice advice) throws Throwable {
                         File file = (File) advice.getParameterArray()[0];
                         String fileName = file.getPath();
-                        checkFileAndPrintLog(fileName, className, methodName);
+                        checkFileAndPrintLog(fileName, PathRuleTrie.WRITE, className, methodName);
                     }
 
                     @Override
-                    public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                    public void afterReturning(Advice advice) throws Throwable {
+                        // 请求中在 web 目录下打开的流, 检查写入的内容
+                        if (advice.getTarget() == null || !RequestContext.isActive(RequestContext.current(requestInfoThreadLocal))) {
+                            return;
+                        }
+                        File file = (File) advice.getParameterArray()[0];
+                        if (webshellSniffer.isWebPath(PathNormalizer.normalize(file.getPath()))) {
+                            webshellSniffer.tag(advice.getTarget(), file.getPath());
+                        }
+                    }
+                });
+    }
+
+    // 被标记的流写入的内容, 没有标记的流只读一个 volatile 字段
+    public void fileOutputStreamWriteHook() {
+        final String className = "java.io.FileOutputStream";
+        new EventWatchBuilder(moduleEventWatcher, EventWatchBuilder.PatternType.REGEX)
+                .onClass(className)
+                .includeBootstrap()
+                .onBehavior("write|close")
+                .onWatch(new AdviceListener() {
+                    @Override
+                    public void before(Advice advice) throws Throwable {
+                        if (webshellSniffer.getTaggedCount() == 0) {
+                            return;
+                        }
+                        Object stream = advice.getTarget();
+                        Object[] parameters = advice.getParameterArray();
+                        if (parameters.length == 0) {
+                            webshellSniffer.untag(stream);
+                            return;
+                        }
+                        long start = System.nanoTime();
+                        WebshellSniffer.Tag tag;
+                        if (parameters.length == 3) {
+                            tag = webshellSniffer.sniff(stream, (byte[]) parameters[0], (Integer) parameters[1], (Integer) parameters[2]);
+                        } else if (parameters.length == 1 && parameters[0] instanceof byte[]) {
+                            byte[] bytes = (byte[]) parameters[0];
+                            tag = webshellSniffer.sniff(stream, bytes, 0, bytes.length);
+                        } else if (parameters.length == 1) {
+                            tag = webshellSniffer.sniff(stream, (Integer) parameters[0]);
+                        } else {
+                            // write(int, boolean) 由 write(int) 调用, 已经检查过
+                            return;
+                        }
+                        if (tag != null) {
+                            webshellAndPrintLog(tag, className, "write", start);
+                        }
                     }
                 });
     }
@@ -119,12 +362,9 @@ public class FileModule implements Module, LoadCompleted {
                         }
                         File file = (File) advice.getTarget();
                         String fileName = file.getPath();
-                        checkFileAndPrintLog(fileName, className, advice.getBehavior().getName());
-                    }
-
-                    @Override
-                    public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        String methodName = advice.getBehavior().getName();
+                        int operation = "delete".equals(methodName) ? PathRuleTrie.DELETE : PathRuleTrie.LIST;
+                        checkFileAndPrintLog(fileName, operation, className, methodName);
                     }
                 });
     }
@@ -146,48 +386,224 @@ public class FileModule implements Module, LoadCompleted {
                         }
                         File file = (File) advice.getParameterArray()[0];
                         String fileName = file.getPath();
-                        checkFileAndPrintLog(fileName, className, advice.getBehavior().getName());
+                        // 只读模式为 "r", 其他模式都可以写
+                        String mode = (String) advice.getParameterArray()[1];
+                        int operation = "r".equals(mode) ? PathRuleTrie.READ : PathRuleTrie.WRITE;
+                        checkFileAndPrintLog(fileName, operation, className, methodName);
+                    }
+                });
+    }
+
+    // nio 文件操作: hook FileSystemProvider 的实现类, Files、FileChannel、AsynchronousFileChannel 等 api 都调用到这里
+    // newInputStream/newOutputStream 在部分 jdk 版本中会调用 newByteChannel, 同一次打开只检测一次
+    public void nioFileHook() {
+        new EventWatchBuilder(moduleEventWatcher, EventWatchBuilder.PatternType.REGEX)
+                .onClass("sun\\.nio\\.fs\\.(Unix|Windows)FileSystemProvider")
+                .includeBootstrap()
+                .onBehavior("newByteChannel|newFileChannel|newAsynchronousFileChannel|newInputStream|newOutputStream|newDirectoryStream|implDelete")
+                .onWatch(new AdviceListener() {
+                    @Override
+                    public void before(Advice advice) throws Throwable {
+                        if (!nioGuard.enter()) {
+                            return;
+                        }
+                        Object[] parameters = advice.getParameterArray();
+                        if (advice.getTarget() == null || parameters.length == 0 || !(parameters[0] instanceof Path)) {
+                            return;
+                        }
+                        String methodName = advice.getBehavior().getName();
+                        int operation = nioOperation(methodName, parameters);
+                        try {
+                            checkFileAndPrintLog(parameters[0].toString(), operation, advice.getTarget().getClass().getName(), methodName);
+                        } catch (ProcessControlException e) {
+                            // 阻断时 afterThrowing 不一定执行
+                            nioGuard.exit();
+                            throw e;
+                        }
+                    }
+
+                    @Override
+                    public void afterReturning(Advice advice) throws Throwable {
+                        nioGuard.exit();
                     }
 
                     @Override
                     public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        nioGuard.exit();
                     }
                 });
     }
 
-    // has_traversal
-    private boolean checkFile(String filePath) {
-        return filePath.contains("../..");
+    // nio 方法对应的操作; 打开选项中有写入、追加、创建时为写, 有 DELETE_ON_CLOSE 时同时为删除
+    private static int nioOperation(String methodName, Object[] parameters) {
+        if ("newDirectoryStream".equals(methodName)) {
+            return PathRuleTrie.LIST;
+        }
+        if ("implDelete".equals(methodName)) {
+            return PathRuleTrie.DELETE;
+        }
+        if ("newOutputStream".equals(methodName)) {
+            return PathRuleTrie.WRITE;
+        }
+        if ("newInputStream".equals(methodName) || parameters.length < 2 || !(parameters[1] instanceof Set)) {
+            return PathRuleTrie.READ;
+        }
+        Set<?> options = (Set<?>) parameters[1];
+        int operation = 0;
+        if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND)
+                || options.contains(StandardOpenOption.CREATE) || options.contains(StandardOpenOption.CREATE_NEW)
+                || options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+            operation |= PathRuleTrie.WRITE;
+        }
+        if (options.contains(StandardOpenOption.DELETE_ON_CLOSE)) {
+            operation |= PathRuleTrie.DELETE;
+        }
+        // 只写选项的打开不包含读
+        if (operation == 0 || options.contains(StandardOpenOption.READ)) {
+            operation |= PathRuleTrie.READ;
+        }
+        return operation;
+    }
+
+    // 检测特征, 0 表示正常
+    private int checkFile(PathRuleTrie rules, PathNormalizer.NormalizedPath path, int operation, boolean inRequest) {
+        int reasons = path.getFlags() & (PathNormalizer.ENCODED_TRAVERSAL | PathNormalizer.NULL_BYTE);
+        // 文件名中的 %2f 等编码是合法字符(例如 jenkins 的 feature%2Fx), 只在请求中作为特征
+        if (inRequest) {
+            reasons |= path.getFlags() & PathNormalizer.ENCODED;
+        }
+        // 请求中出现一个 .. 即视为目录穿越; 请求之外保持原来的 ../.. 判断, 避免误报
+        int traversals = path.getTraversals();
+        if (traversals >= 2 || (traversals == 1 && inRequest)) {
+            reasons |= PathNormalizer.TRAVERSAL;
+        }
+        if ((rules.match(path) & operation) != 0) {
+            reasons |= SENSITIVE;
+        }
+        return reasons;
+    }
+
+    private static List<String> reasonNames(int reasons) {
+        List<String> names = new ArrayList<String>(4);
+        if ((reasons & PathNormalizer.TRAVERSAL) != 0) {
+            names.add("traversal");
+        }
+        if ((reasons & PathNormalizer.ENCODED) != 0) {
+            names.add("encoded");
+        }
+        if ((reasons & PathNormalizer.ENCODED_TRAVERSAL) != 0) {
+            names.add("encodedTraversal");
+        }
+        if ((reasons & PathNormalizer.NULL_BYTE) != 0) {
+            names.add("nullByte");
+        }
+        if ((reasons & SENSITIVE) != 0) {
+            names.add("sensitive");
+        }
+        return names;
     }
 
-    private void checkFileAndPrintLog(String file, String className, String methodName) throws ProcessControlException {
-        if (checkFile(file)) {
-            long start = System.nanoTime();
-            // 获取上下文参数
-            // new HashMap<String, Object> 写法兼容jdk1.6
-            HashMap<String, Object> result = new HashMap<String, Object>(requestInfoThreadLocal.get());
+    private void webshellAndPrintLog(WebshellSniffer.Tag tag, String className, String methodName, long start) throws ProcessControlException {
+        HookMetrics hookMetrics = metricsRegistry.hook(className, methodName);
+        // 内容特征容易误报, 默认只告警
+        boolean blockStatus = enableBlock && webshellSniffer.isBlock();
+        HashMap<String, Object> requestInfo = RequestContext.current(requestInfoThreadLocal);
+        long suppressed = alertRateLimiter.tryAcquire(className, methodName, Fingerprints.fingerprint(tag.getFile()), tag.getFile());
+        if (suppressed >= 0) {
+            AlertEvent result = new AlertEvent(RequestContext.isActive(requestInfo) ? RequestContext.snapshot(requestInfo) : RequestContext.Snapshot.EMPTY);
+            stackInterner.putStack(result, StackTrace.capture());
+            result.put("file", tag.getFile());
+            result.put("reasons", Collections.singletonList("webshell"));
+            result.put("marker", tag.getMarker());
+            if (suppressed > 0) {
+                result.put("suppressed", suppressed);
+            }
+            alertPipeline.emit(result);
+        }
+        hookMetrics.alert();
+        if (blockStatus) {
+            hookMetrics.block();
+        }
+        hookMetrics.record(System.nanoTime() - start);
+        if (blockStatus) {
+            String info = methodName + " file [" + tag.getFile() + "] block by rasp.";
+            ProcessControlException.throwThrowsImmediately(new RuntimeException(info));
+        }
+    }
 
-            // 获取栈
-            ArrayList<String> stackTrace = StackTrace.getStackTrace();
-            result.put("stackTrace", stackTrace);
+    private void checkFileAndPrintLog(String file, int operation, String className, String methodName) throws ProcessControlException {
+        // 请求之外的线程按策略检测
+        HashMap<String, Object> requestInfo = RequestContext.current(requestInfoThreadLocal);
+        boolean inRequest = RequestContext.isActive(requestInfo);
+        ThreadPolicy policy = inRequest ? ThreadPolicy.FULL : backgroundPolicy;
+        if (policy == ThreadPolicy.SKIP) {
+            return;
+        }
 
-            // 文件
-            result.put("file", file);
+        // 学习模式下记录请求中的访问
+        String requestURI = inRequest && accessProfile.isEnabled() ? RequestContext.requestURI(requestInfo) : null;
 
-            // 输出日志
-            String s = jsonObject.toJSONString(result);
-            logger.warn(s);
+        // 已知的正常路径只查一次缓存
+        if (pathCache.isBenign(file, operation)) {
+            if (requestURI != null) {
+                accessProfile.record(requestURI, PathNormalizer.normalize(file), operation);
+            }
+            return;
+        }
 
-            // 耗时统计
-            long end = System.nanoTime();
-            logger.info("方法: {}, 耗时: {} ms", className + "#" + methodName, (end - start) / 1000000.0);
+        long start = System.nanoTime();
+        HookMetrics hookMetrics = metricsRegistry.hook(className, methodName);
+        boolean blockStatus = false;
+        // 先读取缓存的版本再读取规则: 检测期间规则更新时, 检测结果不写入缓存
+        int generation = pathCache.getGeneration();
+        PathRuleTrie rules = pathRules;
+        PathNormalizer.NormalizedPath path = PathNormalizer.normalize(file);
+        int reasons = checkFile(rules, path, operation, inRequest);
+        if (requestURI != null) {
+            accessProfile.record(requestURI, path, operation);
+        }
+        if (reasons == 0 && path.getFlags() == 0) {
+            // 不含 .. 和编码的正常路径与是否在请求中无关, 可以缓存
+            pathCache.putBenign(file, operation, generation);
+        }
+        if (reasons != 0) {
+            // 只有编码特征时只告警不阻断
+            blockStatus = enableBlock && reasons != PathNormalizer.ENCODED;
+
+            // 告警限流, 被限流时不输出日志
+            long suppressed = alertRateLimiter.tryAcquire(className, methodName, Fingerprints.fingerprint(file), file);
+            if (suppressed >= 0) {
+                // 获取上下文参数
+                AlertEvent result = new AlertEvent(policy == ThreadPolicy.FULL ? RequestContext.snapshot(requestInfo) : RequestContext.Snapshot.EMPTY);
+
+                // 获取栈
+                CapturedStack stackTrace = StackTrace.capture();
+                stackInterner.putStack(result, stackTrace);
+
+                // 文件
+                result.put("file", file);
+                result.put("normalizedPath", path.toString());
+                result.put("reasons", reasonNames(reasons));
+                if (suppressed > 0) {
+                    result.put("suppressed", suppressed);
+                }
 
-            // 抛出异常阻断
-            if (enableBlock) {
-                String info = methodName + " file [" + file + "] block by rasp.";
-                ProcessControlException.throwThrowsImmediately(new RuntimeException(info));
+                // 输出日志
+                alertPipeline.emit(result);
             }
+            hookMetrics.alert();
+            if (blockStatus) {
+                hookMetrics.block();
+            }
+        }
+
+        // 耗时统计
+        hookMetrics.record(System.nanoTime() - start);
+
+        // 抛出异常阻断
+        if (blockStatus) {
+            String info = methodName + " file [" + file + "] block by rasp.";
+            ProcessControlException.throwThrowsImmediately(new RuntimeException(info));
         }
     }
 
@@ -0,0 +1,258 @@
+package com.jrasp.module.file;
+
+// 路径规范化: 不调用 File.getCanonicalPath (会访问文件系统), 在每个线程复用的字符缓冲区中完成
+//   1. 相对路径拼接工作目录(user.dir)
+//   2. 反斜杠转换为 /, 合并重复的 /, 去掉 . 段, 按 .. 段回退
+//   3. 规范化结果保留编码原文(文件系统不会解码), 只记录 %2e %2f %5c %00 编码、解码后出现的 .. 段、.. 段数量和空字节等特征
+// 正常路径不创建任何对象
+public class PathNormalizer {
+
+    // 出现 .. 段
+    public final static int TRAVERSAL = 1;
+
+    // 出现 %2e %2f %5c %00 编码
+    public final static int ENCODED = 1 << 1;
+
+    // 出现空字节
+    public final static int NULL_BYTE = 1 << 2;
+
+    // 解码之后出现原文中没有的 .. 段, 例如 %2e%2e/ 和 a%2f..%2fb
+    public final static int ENCODED_TRAVERSAL = 1 << 3;
+
+    private final static ThreadLocal<NormalizedPath> LOCAL = new ThreadLocal<NormalizedPath>() {
+        @Override
+        protected NormalizedPath initialValue() {
+            return new NormalizedPath();
+        }
+    };
+
+    private final static char[] USER_DIR = userDir();
+
+    // 返回当前线程复用的结果对象, 只能在当前 hook 调用中使用
+    public static NormalizedPath normalize(String path) {
+        NormalizedPath result = LOCAL.get();
+        result.reset(USER_DIR.length + path.length() + 2);
+        char[] out = result.chars;
+        int n = path.length();
+        int i = 0;
+        int len = 0;
+        int rootLength = 0;
+        int flags = 0;
+        int traversals = 0;
+
+        // 根: windows 盘符, 或者相对路径拼接工作目录
+        if (n >= 2 && path.charAt(1) == ':' && isLetter(path.charAt(0))) {
+            out[len++] = path.charAt(0);
+            out[len++] = ':';
+            rootLength = 2;
+            i = 2;
+        } else if (n == 0 || (path.charAt(0) != '/' && path.charAt(0) != '\\')) {
+            System.arraycopy(USER_DIR, 0, out, 0, USER_DIR.length);
+            len = USER_DIR.length;
+        }
+
+        // 当前段在 out 中的起始位置, -1 表示还没有写入段前面的 /
+        int segmentStart = -1;
+        for (; i <= n; i++) {
+            char c;
+            if (i == n) {
+                c = '/';
+            } else {
+                c = path.charAt(i);
+                if (c == '%' && i + 2 < n && decode(path.charAt(i + 1), path.charAt(i + 2)) != 0xFFFF) {
+                    flags |= ENCODED;
+                }
+                if (c == '\\') {
+                    c = '/';
+                } else if (c == 0) {
+                    flags |= NULL_BYTE;
+                }
+            }
+            if (c != '/') {
+                if (segmentStart < 0) {
+                    out[len++] = '/';
+                    segmentStart = len;
+                }
+                out[len++] = c;
+                continue;
+            }
+            // 一段结束
+            if (segmentStart >= 0) {
+                int segmentLength = len - segmentStart;
+                if (segmentLength == 1 && out[segmentStart] == '.') {
+                    len = segmentStart - 1;
+                } else if (segmentLength == 2 && out[segmentStart] == '.' && out[segmentStart + 1] == '.') {
+                    traversals++;
+                    len = segmentStart - 1;
+                    // 回退到上一段
+                    while (len > rootLength && out[len - 1] != '/') {
+                        len--;
+                    }
+                    if (len > rootLength) {
+                        len--;
+                    }
+                }
+                segmentStart = -1;
+            }
+        }
+        if (len == rootLength) {
+            out[len++] = '/';
+        }
+        if (traversals > 0) {
+            flags |= TRAVERSAL;
+        }
+        if ((flags & ENCODED) != 0 && decodedTraversal(path)) {
+            flags |= ENCODED_TRAVERSAL;
+        }
+        result.length = len;
+        result.flags = flags;
+        result.traversals = traversals;
+        return result;
+    }
+
+    // 按解码后的内容切分段, 只有编码参与组成的 .. 段才返回 true; 只在出现编码时调用
+    private static boolean decodedTraversal(String path) {
+        int n = path.length();
+        int segmentLength = 0;
+        int dots = 0;
+        boolean encoded = false;
+        for (int i = 0; i <= n; i++) {
+            char c;
+            boolean encodedChar = false;
+            if (i == n) {
+                c = '/';
+            } else {
+                c = path.charAt(i);
+                if (c == '%' && i + 2 < n) {
+                    char decoded = decode(path.charAt(i + 1), path.charAt(i + 2));
+                    if (decoded != 0xFFFF) {
+                        c = decoded;
+                        encodedChar = true;
+                        i += 2;
+                    }
+                }
+            }
+            if (c == '/' || c == '\\') {
+                if (segmentLength == 2 && dots == 2 && (encoded || encodedChar)) {
+                    return true;
+                }
+                segmentLength = 0;
+                dots = 0;
+                encoded = encodedChar;
+                continue;
+            }
+            segmentLength++;
+            if (c == '.') {
+                dots++;
+            }
+            encoded |= encodedChar;
+        }
+        return false;
+    }
+
+    // 只解码 . / \ 和空字节, 其他编码保持原样; 返回 0xFFFF 表示不解码
+    private static char decode(char high, char low) {
+        int value = (hex(high) << 4) | hex(low);
+        if (value < 0) {
+            return 0xFFFF;
+        }
+        switch (value) {
+            case 0x2e:
+            case 0x2f:
+            case 0x5c:
+            case 0x00:
+                return (char) value;
+            default:
+                return 0xFFFF;
+        }
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -256;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static char[] userDir() {
+        String userDir = System.getProperty("user.dir", "");
+        userDir = userDir.replace('\\', '/');
+        while (userDir.length() > 1 && userDir.endsWith("/")) {
+            userDir = userDir.substring(0, userDir.length() - 1);
+        }
+        if ("/".equals(userDir)) {
+            userDir = "";
+        }
+        return userDir.toCharArray();
+    }
+
+    // 规范化后的路径, 每个线程复用
+    public static class NormalizedPath implements CharSequence {
+
+        // 超过这个大小的缓冲区不再复用
+        private final static int MAX_RETAINED_CHARS = 16 * 1024;
+
+        private char[] chars = new char[256];
+
+        private int length;
+
+        private int flags;
+
+        private int traversals;
+
+        void reset(int capacity) {
+            if (capacity > chars.length || chars.length > MAX_RETAINED_CHARS) {
+                chars = new char[Math.max(capacity, 256)];
+            }
+            length = 0;
+            flags = 0;
+            traversals = 0;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        // .. 段的数量
+        public int getTraversals() {
+            return traversals;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+            }
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
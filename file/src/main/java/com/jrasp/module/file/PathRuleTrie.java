@@ -0,0 +1,185 @@
+package com.jrasp.module.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 敏感目录规则: 目录前缀编译为字符前缀树, 每条规则指定需要检测的操作, 编译后不可变, 更新时整体替换
+// 规则格式 "操作:路径前缀", 操作为 r(读) w(写) d(删除) l(遍历) 的组合, "-" 表示不检测
+//   rwd:/etc/shadow    wd:/etc    -:/etc/hostname
+// 前缀只在路径段边界上匹配(/etc 匹配 /etc 和 /etc/x, 不匹配 /etcx), 多条规则匹配时最长的前缀生效
+// 匹配只沿路径逐字符走一遍前缀树, 与规则数量无关
+public final class PathRuleTrie {
+
+    public final static int READ = 1;
+
+    public final static int WRITE = 1 << 1;
+
+    public final static int DELETE = 1 << 2;
+
+    public final static int LIST = 1 << 3;
+
+    public final static String[] DEFAULT_RULES = {
+            "rwd:/etc/passwd",
+            "rwd:/etc/shadow",
+            "rwd:/etc/gshadow",
+            "rwd:/etc/sudoers",
+            "wd:/etc",
+            "r:/proc/self/environ",
+            "rwdl:/root/.ssh",
+            "wd:/bin",
+            "wd:/sbin",
+            "wd:/usr/bin",
+            "wd:/usr/sbin",
+            "wd:/boot"
+    };
+
+    private final static int NO_RULE = -1;
+
+    private final Node root;
+
+    private final List<String> rules;
+
+    private PathRuleTrie(Node root, List<String> rules) {
+        this.root = root;
+        this.rules = rules;
+    }
+
+    // 规则错误时抛出 IllegalArgumentException
+    public static PathRuleTrie compile(String[] rules) {
+        Node root = new Node();
+        List<String> compiled = new ArrayList<String>();
+        if (rules != null) {
+            for (String rule : rules) {
+                if (rule == null || rule.trim().length() == 0) {
+                    continue;
+                }
+                rule = rule.trim();
+                int colon = rule.indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("file rule must be 'ops:path': " + rule);
+                }
+                int operations = parseOperations(rule.substring(0, colon), rule);
+                String prefix = rule.substring(colon + 1).replace('\\', '/');
+                while (prefix.length() > 1 && prefix.endsWith("/")) {
+                    prefix = prefix.substring(0, prefix.length() - 1);
+                }
+                if (prefix.length() == 0) {
+                    throw new IllegalArgumentException("empty path in file rule: " + rule);
+                }
+                Node node = root;
+                // 根目录规则放在根节点上
+                if (!"/".equals(prefix)) {
+                    for (int i = 0; i < prefix.length(); i++) {
+                        node = node.child(prefix.charAt(i));
+                    }
+                }
+                node.operations = operations;
+                compiled.add(rule);
+            }
+        }
+        return new PathRuleTrie(root, Collections.unmodifiableList(compiled));
+    }
+
+    // 返回路径上最长前缀规则的操作, 没有规则时返回 0
+    public int match(CharSequence path) {
+        int operations = root.operations == NO_RULE ? 0 : root.operations;
+        Node node = root;
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            node = node.find(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.operations != NO_RULE && (i + 1 == length || path.charAt(i + 1) == '/')) {
+                operations = node.operations;
+            }
+        }
+        return operations;
+    }
+
+    public List<String> getRules() {
+        return rules;
+    }
+
+    // 操作的规则写法, 例如 "rw", 没有操作时为 "-"
+    public static String operationNames(int operations) {
+        if (operations == 0) {
+            return "-";
+        }
+        StringBuilder names = new StringBuilder(4);
+        if ((operations & READ) != 0) {
+            names.append('r');
+        }
+        if ((operations & WRITE) != 0) {
+            names.append('w');
+        }
+        if ((operations & DELETE) != 0) {
+            names.append('d');
+        }
+        if ((operations & LIST) != 0) {
+            names.append('l');
+        }
+        return names.toString();
+    }
+
+    private static int parseOperations(String value, String rule) {
+        int operations = 0;
+        for (int i = 0; i < value.length(); i++) {
+            switch (Character.toLowerCase(value.charAt(i))) {
+                case 'r':
+                    operations |= READ;
+                    break;
+                case 'w':
+                    operations |= WRITE;
+                    break;
+                case 'd':
+                    operations |= DELETE;
+                    break;
+                case 'l':
+                    operations |= LIST;
+                    break;
+                case '-':
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown operation '" + value.charAt(i) + "' in file rule: " + rule);
+            }
+        }
+        return operations;
+    }
+
+    private static class Node {
+
+        private char[] labels = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private int operations = NO_RULE;
+
+        Node child(char c) {
+            Node node = find(c);
+            if (node == null) {
+                node = new Node();
+                int size = labels.length;
+                char[] newLabels = new char[size + 1];
+                Node[] newChildren = new Node[size + 1];
+                System.arraycopy(labels, 0, newLabels, 0, size);
+                System.arraycopy(children, 0, newChildren, 0, size);
+                newLabels[size] = c;
+                newChildren[size] = node;
+                labels = newLabels;
+                children = newChildren;
+            }
+            return node;
+        }
+
+        Node find(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+}
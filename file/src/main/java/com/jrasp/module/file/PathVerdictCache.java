@@ -0,0 +1,61 @@
+package com.jrasp.module.file;
+
+import com.jrasp.module.common.ClockTable;
+
+import java.util.Map;
+
+// 正常路径缓存: key 为 (操作, 路径), 命中时不再规范化和匹配规则
+// 使用 common 中组相联的 CLOCK 表; 查询无锁, 写入使用 CAS
+// 规则更新时整体失效; 定期清理一段时间内没有访问的路径, 已卸载应用的路径不会一直保留
+public class PathVerdictCache {
+
+    public final static int DEFAULT_CAPACITY = 4096;
+
+    // 过长的路径不缓存
+    private final static int MAX_PATH_LENGTH = 1024;
+
+    private final ClockTable<String, Boolean> table;
+
+    public PathVerdictCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PathVerdictCache(int capacity) {
+        this.table = new ClockTable<String, Boolean>(capacity);
+    }
+
+    public boolean isBenign(String path, int operation) {
+        return table.get(key(path, operation), path) != null;
+    }
+
+    // 检测之前读取, 与检测结果一起传给 putBenign
+    public int getGeneration() {
+        return table.getGeneration();
+    }
+
+    // generation 为检测之前读取的值, 检测期间规则发生了变化时不写入
+    public void putBenign(String path, int operation, int generation) {
+        if (path.length() <= MAX_PATH_LENGTH) {
+            table.put(key(path, operation), path, Boolean.TRUE, generation);
+        }
+    }
+
+    // 规则变化时调用
+    public void invalidate() {
+        table.invalidate();
+    }
+
+    // 定期调用: 上次清理之后没有访问过的路径被移除
+    public void sweep() {
+        table.sweep();
+    }
+
+    public Map<String, Object> status() {
+        return table.status();
+    }
+
+    // hash 相同时操作也相同, 只需要再比较路径
+    private static long key(String path, int operation) {
+        return ((long) path.hashCode() << 32) | (operation & 0xffffffffL);
+    }
+}
@@ -0,0 +1,279 @@
+package com.jrasp.module.file;
+
+import com.jrasp.module.common.AhoCorasick;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+// 写入 web 目录的文件内容检测: 请求中在 web 目录下打开的 FileOutputStream 被标记,
+// 只检查写入的前 limit 个字节中是否出现脚本特征; 超过 limit、关闭或者命中之后取消标记
+// 标记保存在写时复制的数组中, write hook 无锁按引用查找; 没有标记的流时只读一个 volatile 字段
+// 被标记的流没有关闭就被回收时, 由定期任务和下一次标记时清理
+// 默认只告警不阻断, 通过 /sniff?block=true 开启阻断
+public class WebshellSniffer {
+
+    public final static int DEFAULT_LIMIT = 4096;
+
+    // 同时标记的流的上限, 超过时不再标记新的流
+    private final static int MAX_TAGGED = 64;
+
+    private final static Tag[] NO_TAGS = new Tag[0];
+
+    // 脚本特征, 不区分大小写
+    public final static String[] MARKERS = {
+            "<%", "<jsp:", "Runtime.getRuntime", "ProcessBuilder", "defineClass",
+            "<?php", "<?=", "<script language=\"php\""
+    };
+
+    // 脚本文件后缀, 不在 web 目录下也会被标记
+    private final static String[] SCRIPT_SUFFIXES = {".jsp", ".jspx", ".jspf", ".php", ".asp", ".aspx", ".ashx"};
+
+    private final AhoCorasick automaton = AhoCorasick.compile(MARKERS, true);
+
+    // 被标记的流, 只在持有 this 锁时替换
+    private volatile Tag[] tags = NO_TAGS;
+
+    private volatile int limit = DEFAULT_LIMIT;
+
+    private volatile boolean block;
+
+    // web 目录, 更新时整体替换
+    private volatile PathRuleTrie webRoots = PathRuleTrie.compile(defaultWebRoots());
+
+    public boolean isWebPath(CharSequence path) {
+        return hasScriptSuffix(path) || contains(path, "/webapps/") || webRoots.match(path) != 0;
+    }
+
+    public synchronized void tag(Object stream, String file) {
+        Tag[] current = expunge(tags);
+        for (Tag tag : current) {
+            if (tag.get() == stream) {
+                tags = current;
+                return;
+            }
+        }
+        if (current.length >= MAX_TAGGED) {
+            tags = current;
+            return;
+        }
+        Tag[] next = new Tag[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new Tag(stream, file);
+        tags = next;
+    }
+
+    public void untag(Object stream) {
+        Tag tag = find(stream);
+        if (tag != null) {
+            remove(tag);
+        }
+    }
+
+    // 定期调用: 移除没有关闭就被回收的流
+    public synchronized void sweep() {
+        tags = expunge(tags);
+    }
+
+    // 命中时返回流的标记, 没有命中或者流没有标记时返回 null
+    public Tag sniff(Object stream, byte[] bytes, int offset, int length) {
+        Tag tag = find(stream);
+        if (tag == null) {
+            return null;
+        }
+        int marker = -1;
+        // 同一个流一般只在一个线程中写入
+        synchronized (tag) {
+            int end = offset + Math.max(0, Math.min(length, limit - tag.inspected));
+            int s = tag.state;
+            for (int i = offset; i < end && marker < 0; i++) {
+                s = automaton.next(s, (char) (bytes[i] & 0xFF));
+                marker = automaton.pattern(s);
+            }
+            tag.state = s;
+            tag.inspected += end - offset;
+            if (marker < 0 && tag.inspected < limit) {
+                return null;
+            }
+        }
+        return finish(tag, marker);
+    }
+
+    // write(int), 不创建数组
+    public Tag sniff(Object stream, int b) {
+        Tag tag = find(stream);
+        if (tag == null) {
+            return null;
+        }
+        int marker = -1;
+        synchronized (tag) {
+            if (tag.inspected < limit) {
+                tag.state = automaton.next(tag.state, (char) (b & 0xFF));
+                tag.inspected++;
+                marker = automaton.pattern(tag.state);
+            }
+            if (marker < 0 && tag.inspected < limit) {
+                return null;
+            }
+        }
+        return finish(tag, marker);
+    }
+
+    // 超过 limit 或者命中之后取消标记
+    private Tag finish(Tag tag, int marker) {
+        remove(tag);
+        if (marker < 0) {
+            return null;
+        }
+        tag.marker = automaton.getPattern(marker);
+        return tag;
+    }
+
+    // 无锁按引用查找
+    private Tag find(Object stream) {
+        Tag[] current = tags;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].get() == stream) {
+                return current[i];
+            }
+        }
+        return null;
+    }
+
+    private synchronized void remove(Tag tag) {
+        Tag[] current = tags;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == tag) {
+                Tag[] next = new Tag[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                tags = next;
+                return;
+            }
+        }
+    }
+
+    private static Tag[] expunge(Tag[] current) {
+        int live = 0;
+        for (Tag tag : current) {
+            if (tag.get() != null) {
+                live++;
+            }
+        }
+        if (live == current.length) {
+            return current;
+        }
+        Tag[] next = new Tag[live];
+        int n = 0;
+        for (Tag tag : current) {
+            if (tag.get() != null) {
+                next[n++] = tag;
+            }
+        }
+        return next;
+    }
+
+    public int getTaggedCount() {
+        return tags.length;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public boolean isBlock() {
+        return block;
+    }
+
+    public void setBlock(boolean block) {
+        this.block = block;
+    }
+
+    public List<String> getWebRoots() {
+        return webRoots.getRules();
+    }
+
+    // 规则错误时抛出 IllegalArgumentException
+    public void setWebRoots(String[] roots) {
+        String[] rules = new String[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            rules[i] = "w:" + roots[i].trim();
+        }
+        webRoots = PathRuleTrie.compile(rules);
+    }
+
+    // 容器的 webapps 目录
+    private static String[] defaultWebRoots() {
+        String[] properties = {"catalina.base", "catalina.home", "jetty.base", "jetty.home"};
+        String[] rules = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            String value = System.getProperty(properties[i]);
+            rules[i] = value == null ? null : "w:" + PathNormalizer.normalize(value + "/webapps").toString();
+        }
+        return rules;
+    }
+
+    private static boolean hasScriptSuffix(CharSequence path) {
+        for (String suffix : SCRIPT_SUFFIXES) {
+            int start = path.length() - suffix.length();
+            if (start > 0 && regionEqualsIgnoreCase(path, start, suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence path, int start, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(path.charAt(start + i)) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(CharSequence path, String value) {
+        int last = path.length() - value.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            for (int j = 0; j < value.length(); j++) {
+                if (path.charAt(i + j) != value.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // 持有流的弱引用, 不影响流的回收
+    public static class Tag extends WeakReference<Object> {
+
+        private final String file;
+
+        // 自动机状态
+        private int state = AhoCorasick.ROOT;
+
+        // 已经检查的字节数
+        private int inspected;
+
+        // 命中的特征
+        private String marker;
+
+        Tag(Object stream, String file) {
+            super(stream);
+            this.file = file;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public String getMarker() {
+            return marker;
+        }
+    }
+}
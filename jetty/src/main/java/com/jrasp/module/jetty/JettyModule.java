@@ -4,17 +4,22 @@ import com.jrasp.api.Information;
 import com.jrasp.api.LoadCompleted;
 import com.jrasp.api.Module;
 import com.jrasp.api.Resource;
+import com.jrasp.api.annotation.Command;
+import com.jrasp.api.json.JSONObject;
 import com.jrasp.api.listener.ext.Advice;
 import com.jrasp.api.listener.ext.AdviceListener;
 import com.jrasp.api.listener.ext.EventWatchBuilder;
 import com.jrasp.api.log.Log;
+import com.jrasp.api.model.RestResultUtils;
 import com.jrasp.api.resource.ModuleEventWatcher;
+import com.jrasp.module.common.BodyTap;
+import com.jrasp.module.common.RequestContext;
 import org.eclipse.jetty.server.HttpChannel;
 import org.kohsuke.MetaInfServices;
 
 import org.eclipse.jetty.server.Request;
 
-import javax.servlet.http.Cookie;
+import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,11 +36,40 @@ public class JettyModule implements Module, LoadCompleted {
     @Resource
     private ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal;
 
-    // 统计 body hook 点耗时
-    private ThreadLocal<Double> bodyHookTime = new ThreadLocal<Double>() {
+    @Resource
+    private JSONObject jsonObject;
+
+    // body 截取的耗时上限 0.1 ms
+    private static final long BODY_TIME_LIMIT_NANOS = 100000L;
+
+    // 请求上下文, 每个线程复用
+    private final ThreadLocal<RequestContext> requestContext = new ThreadLocal<RequestContext>() {
         @Override
-        public Double initialValue() {
-            return 0.0d;
+        protected RequestContext initialValue() {
+            return new RequestContext("jetty");
+        }
+    };
+
+    // 调用方地址使用 getRemoteAddr, getRemoteHost 在开启 enableLookups 时会反查主机名
+    private static final RequestContext.Resolver RESOLVER = new RequestContext.Resolver() {
+        @Override
+        public String localAddr(Object request) {
+            return ((Request) request).getLocalAddr();
+        }
+
+        @Override
+        public String remoteAddr(Object request) {
+            return ((Request) request).getRemoteAddr();
+        }
+
+        @Override
+        public Map<String, String[]> parameterMap(Object request) {
+            return ((Request) request).getParameterMap();
+        }
+
+        @Override
+        public Object[] cookies(Object request) {
+            return ((Request) request).getCookies();
         }
     };
 
@@ -45,6 +79,23 @@ public class JettyModule implements Module, LoadCompleted {
         jettyRequestBodyHook();
     }
 
+    // 请求体截取的容量, 单位字节, 下一个请求开始时生效
+    @Command("/body")
+    public void body(Map<String, String> parameterMap, final PrintWriter writer) {
+        String capacityParam = parameterMap.get("capacity");
+        if (capacityParam != null) {
+            try {
+                BodyTap.setCapacity(Integer.parseInt(capacityParam));
+            } catch (NumberFormatException e) {
+                logger.warn("jetty body capacity param error: {}", e.getMessage());
+            }
+        }
+        String result = jsonObject.toJSONString(RestResultUtils.success("请求体截取容量", BodyTap.getCapacity()));
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
     // 绑定 request 参数
     public void jettyRequestPreHook() {
         new EventWatchBuilder(moduleEventWatcher)
@@ -57,13 +108,22 @@ public class JettyModule implements Module, LoadCompleted {
                     public void before(Advice advice) throws Throwable {
                         // 清除 requestInfo 信息
                         requestInfoThreadLocal.remove();
-                        bodyHookTime.remove();
+                        RequestContext context = requestContext.get();
+                        context.recycle();
                         HttpChannel httpChannel = (HttpChannel) advice.getParameterArray()[0];
-                        storeRequestInfo(requestInfoThreadLocal.get(), httpChannel.getRequest()); // 按照实际类型强制转换
+                        storeRequestInfo(context, httpChannel.getRequest()); // 按照实际类型强制转换
+                        context.attach(requestInfoThreadLocal.get());
+                    }
+
+                    // 请求结束
+                    @Override
+                    public void afterReturning(Advice advice) throws Throwable {
+                        requestContext.get().exit();
                     }
 
                     @Override
                     public void afterThrowing(Advice advice) throws Throwable {
+                        requestContext.get().exit();
                         requestInfoThreadLocal.remove(); // 清除 requestInfo 信息
                     }
                 });
@@ -81,24 +141,14 @@ public class JettyModule implements Module, LoadCompleted {
                     public void afterReturning(Advice advice) throws Throwable {
                         try {
                             long start = System.nanoTime();
-                            Double time = bodyHookTime.get();
-                            HashMap<String, Object> stringObjectHashMap = requestInfoThreadLocal.get();
-                            if (time == null || time <= 0.1) { // 截取 body的耗时统计
-                                byte[] allBytes = (byte[]) advice.getParameterArray()[0];
-                                int readLength = (Integer) advice.getReturnObj() + 1;
-                                String parameters = new String(allBytes, 0, Math.min(readLength, allBytes.length), "utf-8");
-
-                                Object parametersBody = stringObjectHashMap.get("parameterBody");
-                                if (parametersBody == null) {
-                                    parametersBody = "";
-                                }
-                                stringObjectHashMap.put("parameterBody", parametersBody + parameters);
+                            RequestContext context = requestContext.get();
+                            if (context.getBodyTime() <= BODY_TIME_LIMIT_NANOS) { // 截取 body的耗时统计
+                                // 返回值为读到的长度, 从 off 开始写入; 结束时返回 -1
+                                Object[] parameters = advice.getParameterArray();
+                                context.appendBody((byte[]) parameters[0], (Integer) parameters[1], (Integer) advice.getReturnObj());
                             }
                             long end = System.nanoTime();
-                            double callTime = (end - start) / 1000000.0;
-                            time += callTime;
-                            stringObjectHashMap.put("jetty.request.body.time", bodyHookTime.get());
-                            bodyHookTime.set(time);
+                            context.addBodyTime(end - start);
                         } catch (Exception e) {
                             e.printStackTrace();
                             logger.error("jetty server httpinput read error", e);
@@ -107,38 +157,23 @@ public class JettyModule implements Module, LoadCompleted {
 
                     @Override
                     public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        // 读取请求体出错只停止截取, requestInfo 由请求结束的 hook 清除
+                        requestContext.get().stopBody();
                     }
                 });
     }
 
-    public static void storeRequestInfo(HashMap<String, Object> stringObjectHashMap, Request request) {
-        // 本机地址
-        String localAddr = request.getLocalAddr();
-        stringObjectHashMap.put("localAddr", localAddr);
-
+    public static void storeRequestInfo(RequestContext context, Request request) {
         // http请求类型：get、post
-        String method = request.getMethod();
-        stringObjectHashMap.put("method", method);
+        context.setMethod(request.getMethod());
 
         // http请求协议: HTTP/1.1
-        String protocol = request.getProtocol();
-        stringObjectHashMap.put("protocol", protocol);
-
-        // 调用主机地址
-        String remoteHost = request.getRemoteHost();
-        stringObjectHashMap.put("remoteHost", remoteHost);
+        context.setProtocol(request.getProtocol());
 
         // http请求路径
-        String requestURI = request.getRequestURI();
-        stringObjectHashMap.put("requestURI", requestURI);
-
-        // 参数
-        Map<String, String[]> parameterMap = request.getParameterMap();
-        stringObjectHashMap.put("parameterMap", parameterMap);
+        context.setRequestURI(request.getRequestURI());
 
-        // 请求cookie
-        Cookie[] cookies = request.getCookies();
-        stringObjectHashMap.put("cookies", cookies);
+        // 本机地址、调用方地址、参数、cookie 在检测模块读取时获取
+        context.setRequest(request, RESOLVER);
     }
 }
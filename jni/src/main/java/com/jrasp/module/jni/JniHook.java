@@ -1,25 +1,35 @@
 package com.jrasp.module.jni;
 
 import com.jrasp.api.Information;
-import com.jrasp.api.LoadCompleted;
 import com.jrasp.api.Module;
+import com.jrasp.api.ModuleLifecycleAdapter;
 import com.jrasp.api.Resource;
+import com.jrasp.api.annotation.Command;
 import com.jrasp.api.json.JSONObject;
 import com.jrasp.api.listener.ext.Advice;
 import com.jrasp.api.listener.ext.AdviceListener;
 import com.jrasp.api.listener.ext.EventWatchBuilder;
 import com.jrasp.api.log.Log;
 import com.jrasp.api.resource.ModuleEventWatcher;
+import com.jrasp.module.common.AlertEvent;
+import com.jrasp.module.common.AlertPipeline;
+import com.jrasp.module.common.CapturedStack;
+import com.jrasp.module.common.HookMetrics;
+import com.jrasp.module.common.MetricsRegistry;
+import com.jrasp.module.common.ModuleCommands;
+import com.jrasp.module.common.RequestContext;
+import com.jrasp.module.common.StackInterner;
 import com.jrasp.module.common.StackTrace;
 import org.kohsuke.MetaInfServices;
 
-import java.util.ArrayList;
+import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.Map;
 
 // jni注入
 @MetaInfServices(Module.class)
 @Information(id = "jni", version = "1.0", author = "jrasp")
-public class JniHook implements Module, LoadCompleted {
+public class JniHook extends ModuleLifecycleAdapter implements Module {
 
     @Resource
     private Log logger;
@@ -33,11 +43,44 @@ public class JniHook implements Module, LoadCompleted {
     @Resource
     private ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal;
 
+    // 相同的调用栈只输出一次完整的栈
+    private final StackInterner stackInterner = new StackInterner();
+
+    // 告警在后台线程中序列化和输出
+    private final AlertPipeline<AlertEvent> alertPipeline = new AlertPipeline<AlertEvent>("jni",
+            new AlertPipeline.Handler<AlertEvent>() {
+                @Override
+                public void handle(AlertEvent event) {
+                    logger.warn(jsonObject.toJSONString(event.toMap()));
+                }
+            });
+
+    // 各 hook 点的耗时分布和命中、告警、阻断次数
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
     @Override
     public void loadCompleted() {
+        // 丢弃的告警中的完整栈没有输出, 撤销记录
+        stackInterner.forgetDropped(alertPipeline);
+        alertPipeline.start();
         loadLibraryHook();
     }
 
+    @Override
+    public void onUnload() throws Throwable {
+        alertPipeline.stop();
+    }
+
+    @Command("/alert")
+    public void alert(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.alert("jni", alertPipeline, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/metrics")
+    public void metrics(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.metrics(metricsRegistry, parameterMap, writer, jsonObject);
+    }
+
     public void loadLibraryHook() {
         new EventWatchBuilder(moduleEventWatcher)
                 .onClass("java.lang.System")
@@ -46,19 +89,18 @@ public class JniHook implements Module, LoadCompleted {
                 .onWatch(new AdviceListener() {
                     @Override
                     public void before(Advice advice) throws Throwable {
+                        long start = System.nanoTime();
+                        HookMetrics hookMetrics = metricsRegistry.hook("java.lang.System", advice.getBehavior().getName());
                         String libname = (String) advice.getParameterArray()[0];
-                        HashMap<String, Object> result = new HashMap<String, Object>(requestInfoThreadLocal.get());
-                        ArrayList<String> stackTrace = StackTrace.getStackTrace();
-                        result.put("stackTrace", stackTrace);
+                        AlertEvent result = new AlertEvent(RequestContext.snapshot(RequestContext.current(requestInfoThreadLocal)));
+                        CapturedStack stackTrace = StackTrace.capture();
+                        stackInterner.putStack(result, stackTrace);
                         result.put("libName", libname);
                         // 输出日志
-                        String s = jsonObject.toJSONString(result);
-                        logger.warn(s);
-                    }
-
-                    @Override
-                    public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        alertPipeline.emit(result);
+                        hookMetrics.alert();
+                        // 耗时统计
+                        hookMetrics.record(System.nanoTime() - start);
                     }
                 });
     }
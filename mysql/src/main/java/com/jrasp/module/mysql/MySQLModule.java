@@ -2,26 +2,41 @@ package com.jrasp.module.mysql;
 
 import com.jrasp.api.*;
 import com.jrasp.api.Module;
+import com.jrasp.api.annotation.Command;
 import com.jrasp.api.json.JSONObject;
 import com.jrasp.api.listener.ext.Advice;
 import com.jrasp.api.listener.ext.AdviceListener;
 import com.jrasp.api.listener.ext.EventWatchBuilder;
 import com.jrasp.api.log.Log;
+import com.jrasp.api.model.RestResultUtils;
 import com.jrasp.api.resource.ModuleEventWatcher;
-import com.jrasp.module.common.ReflectUtils;
+import com.jrasp.module.common.AlertEvent;
+import com.jrasp.module.common.AlertPipeline;
+import com.jrasp.module.common.AlertRateLimiter;
+import com.jrasp.module.common.CapturedStack;
+import com.jrasp.module.common.HookMetrics;
+import com.jrasp.module.common.MetricsRegistry;
+import com.jrasp.module.common.ModuleCommands;
+import com.jrasp.module.common.ReentryGuard;
+import com.jrasp.module.common.RequestContext;
+import com.jrasp.module.common.StackInterner;
 import com.jrasp.module.common.StackTrace;
+import com.jrasp.module.common.ThreadPolicy;
 import org.kohsuke.MetaInfServices;
 
-import java.lang.reflect.Method;
-import java.sql.SQLException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static com.jrasp.module.common.ClassLoaderUtil.earlyLoadClass;
 
 @MetaInfServices(Module.class)
 @Information(id = "mysql", isActiveOnLoad = true, version = "1.0.0", author = "jrasp")
-public class MySQLModule implements Module, LoadCompleted {
+public class MySQLModule extends ModuleLifecycleAdapter implements Module {
 
     @Resource
     private Log logger;
@@ -35,99 +50,448 @@ public class MySQLModule implements Module, LoadCompleted {
     @Resource
     private ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal;
 
+    // 相同的调用栈只输出一次完整的栈
+    private final StackInterner stackInterner = new StackInterner();
+
+    // 告警在后台线程中序列化和输出
+    private final AlertPipeline<AlertEvent> alertPipeline = new AlertPipeline<AlertEvent>("mysql",
+            new AlertPipeline.Handler<AlertEvent>() {
+                @Override
+                public void handle(AlertEvent event) {
+                    logger.warn(jsonObject.toJSONString(event.toMap()));
+                }
+            });
+
+    // 告警限流: 相同 hook 点、相同内容的告警按令牌桶输出, 不影响阻断
+    private final AlertRateLimiter alertRateLimiter = new AlertRateLimiter("mysql");
+
+    // 请求之外的线程的检测策略
+    private volatile ThreadPolicy backgroundPolicy = ThreadPolicy.LIGHT;
+
+    // 各 hook 点的耗时分布和命中、告警、阻断次数
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
     private volatile boolean enableBlock = false;
 
+    // 检测分数达到这个值才阻断
+    private volatile int blockScore = SqlVerdict.ALERT_SCORE;
+
+    // sql 检测结果缓存, 按 sql 文本和 sql 结构指纹两级
+    private final SqlVerdictCache verdictCache = new SqlVerdictCache();
+
+    // 按预编译语句的实现类缓存取 sql 的方法
+    private final SqlExtractorRegistry sqlExtractors = new SqlExtractorRegistry();
+
+    // 连接池代理和驱动的重入
+    private final ReentryGuard jdbcGuard = new ReentryGuard();
+
+    // 结果集行数统计, 行数远超这种 sql 结构的历史时告警
+    private final RowMonitor rowMonitor = new RowMonitor(new RowMonitor.Listener() {
+        @Override
+        public void onOutlier(Object resultSet, SqlVerdict verdict, long rows, long baselineRows, boolean sameRequest) {
+            rowsAndPrintLog(resultSet.getClass().getName(), verdict, rows, baselineRows, sameRequest);
+        }
+    });
+
     @Override
     public void loadCompleted() {
+        alertPipeline.setPeriodicTask(new Runnable() {
+            @Override
+            public void run() {
+                // 输出被限流的告警汇总
+                for (Map<String, Object> summary : alertRateLimiter.drainSuppressed()) {
+                    logger.warn(jsonObject.toJSONString(summary));
+                }
+            }
+        }, AlertRateLimiter.SUMMARY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        // 丢弃的告警中的完整栈没有输出, 撤销记录
+        stackInterner.forgetDropped(alertPipeline);
+        alertPipeline.start();
         earlyLoadClass("com.mysql.jdbc.StatementImpl", "com.mysql.jdbc.Statement", "com.mysql.jdbc.PreparedStatement");
         earlyLoadClass("com.mysql.cj.jdbc.StatementImpl", "com.mysql.cj.jdbc.ClientPreparedStatement", "com.mysql.cj.jdbc.PreparedStatement");
-        statementSqlHook();
-        preparedStatementSqlHook();
+        jdbcSqlHook();
+        resultSetHook();
+    }
+
+    @Override
+    public void onUnload() throws Throwable {
+        alertPipeline.stop();
+    }
+
+    @Command("/alert")
+    public void alert(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.alert("mysql", alertPipeline, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/ratelimit")
+    public void rateLimit(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.rateLimit("mysql", alertRateLimiter, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/policy")
+    public void policy(Map<String, String> parameterMap, final PrintWriter writer) {
+        backgroundPolicy = ModuleCommands.policy("mysql", backgroundPolicy, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/metrics")
+    public void metrics(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.metrics(metricsRegistry, parameterMap, writer, jsonObject);
+    }
+
+    @Command("/cache")
+    public void cache(Map<String, String> parameterMap, final PrintWriter writer) {
+        Map<String, Object> data = verdictCache.status();
+        data.put("alerted", verdictCache.alerted());
+        String result = jsonObject.toJSONString(RestResultUtils.success("sql 检测结果缓存统计", data));
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
+    @Command("/jdbc")
+    public void jdbc(Map<String, String> parameterMap, final PrintWriter writer) {
+        String pathParam = parameterMap.get("path");
+        if (pathParam != null) {
+            sqlExtractors.addPaths(pathParam.split(","));
+        }
+        Map<String, Object> data = new HashMap<String, Object>(4);
+        data.put("paths", sqlExtractors.getPaths());
+        data.put("resolved", sqlExtractors.getResolved());
+        String result = jsonObject.toJSONString(RestResultUtils.success("预编译语句 sql 提取方式", data));
+        writer.println(result);
+        writer.flush();
+        writer.close();
     }
 
-    // sql 拼接
-    public void statementSqlHook() {
+    @Command("/rows")
+    public void rows(Map<String, String> parameterMap, final PrintWriter writer) {
+        try {
+            String minRowsParam = parameterMap.get("minRows");
+            String factorParam = parameterMap.get("factor");
+            String maxRowsParam = parameterMap.get("maxRows");
+            rowMonitor.configure(minRowsParam != null ? Long.parseLong(minRowsParam) : rowMonitor.getMinRows(),
+                    factorParam != null ? Integer.parseInt(factorParam) : rowMonitor.getFactor(),
+                    maxRowsParam != null ? Long.parseLong(maxRowsParam) : rowMonitor.getMaxRows());
+        } catch (NumberFormatException e) {
+            logger.warn("mysql rows param error: {}", e.getMessage());
+        }
+        String result = jsonObject.toJSONString(RestResultUtils.success("结果集行数统计", rowMonitor.status()));
+        if (Boolean.parseBoolean(parameterMap.get("reset"))) {
+            rowMonitor.reset();
+        }
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
+    @Command("/block")
+    public void block(Map<String, String> parameterMap, final PrintWriter writer) {
+        String isBlockParam = parameterMap.get("isBlock");
+        enableBlock = Boolean.parseBoolean(isBlockParam);
+        String scoreParam = parameterMap.get("score");
+        if (scoreParam != null) {
+            try {
+                blockScore = Integer.parseInt(scoreParam);
+            } catch (NumberFormatException e) {
+                logger.warn("mysql block score param error: {}", e.getMessage());
+            }
+        }
+        logger.info("mysql block status: {}, block score: {}", enableBlock, blockScore);
+        String result = jsonObject.toJSONString(RestResultUtils.success("更新 sql 注入阻断状态", enableBlock));
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
+    // jdbc 执行 sql: 所有 java.sql.Statement 的实现类, 包括各种驱动和连接池的代理
+    // 拼接执行时 sql 是第一个参数; 预编译执行时没有参数, 按实现类从驱动内部取出 sql
+    // 连接池代理会再调用驱动的同名方法, 同一次执行只检测一次: 第一个取到 sql 的调用检测并标记, 内层的调用跳过
+    // addBatch(sql) 只追加到语句的缓冲中, executeBatch 时统一检测, 每个批次最多一条告警; clearBatch 和 close 释放缓冲
+    public void jdbcSqlHook() {
         new EventWatchBuilder(moduleEventWatcher, EventWatchBuilder.PatternType.REGEX)
-                .onClass("com.mysql.jdbc.StatementImpl|com.mysql.jdbc.Statement|com.mysql.cj.jdbc.StatementImpl")
+                .onClass("java\\.sql\\.Statement")
+                .includeSubClasses()
                 .includeBootstrap()
-                .onBehavior("executeInternal|executeUpdateInternal|addBatch|executeQuery")
-                .hasExceptionTypes(SQLException.class)
+                .onBehavior("execute|executeQuery|executeUpdate|executeLargeUpdate|executeBatch|executeLargeBatch|addBatch|clearBatch|close")
                 .onWatch(new AdviceListener() {
                     @Override
                     public void before(Advice advice) throws Throwable {
-                        Object[] parameterArray = advice.getParameterArray();
-                        if (parameterArray == null) {
+                        jdbcGuard.enter();
+                        if (jdbcGuard.isMarked() || advice.getTarget() == null) {
                             return;
                         }
-                        String sql = (String) parameterArray[0];
-                        checkSqlAndPrintLog(sql, advice.getTarget().getClass().getName(), advice.getBehavior().getName());
+                        try {
+                            onStatement(advice);
+                        } catch (ProcessControlException e) {
+                            // 阻断时 afterThrowing 不一定执行
+                            jdbcGuard.exit();
+                            throw e;
+                        }
+                    }
+
+                    @Override
+                    public void afterReturning(Advice advice) throws Throwable {
+                        // 检测过 sql 的调用返回的结果集登记行数统计
+                        if (jdbcGuard.isMarker()) {
+                            rowMonitor.opened(advice.getReturnObj(), RequestContext.sequence(RequestContext.current(requestInfoThreadLocal)));
+                        }
+                        jdbcGuard.exit();
                     }
 
                     @Override
                     public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        jdbcGuard.exit();
                     }
                 });
     }
 
-    // sql 预编译
-    public void preparedStatementSqlHook() {
+    // 结果集行数: 只统计 jdbcSqlHook 登记过的结果集, 连接池代理和驱动的结果集不会重复计数
+    public void resultSetHook() {
         new EventWatchBuilder(moduleEventWatcher, EventWatchBuilder.PatternType.REGEX)
-                .onClass("com.mysql.jdbc.PreparedStatement|com.mysql.cj.jdbc.ClientPreparedStatement|com.mysql.cj.jdbc.PreparedStatement")
+                .onClass("java\\.sql\\.ResultSet")
+                .includeSubClasses()
                 .includeBootstrap()
-                .onBehavior("execute|executeQuery|executeUpdate|executeBatchInternal|executeBatch")
+                .onBehavior("next|close")
                 .withEmptyParameterTypes()
                 .onWatch(new AdviceListener() {
                     @Override
-                    public void before(Advice advice) throws Throwable {
-                        // todo 参考 openrasp, 使用反射获取SQL,可以优化为直接调用
-                        // mysql5.x
-                        //PreparedStatement preparedStatement=(PreparedStatement)advice.getTarget();
-                        //String sql=preparedStatement.getPreparedSql();
-                        // mysql8.x
-                        //JdbcPreparedStatement jdbcPreparedStatement = (JdbcPreparedStatement) advice.getTarget();
-                        //String sql = jdbcPreparedStatement.getPreparedSql();
-                        Method getPreparedSql = ReflectUtils.getMethod(advice.getTarget().getClass(), "getPreparedSql");
-                        String sql = ReflectUtils.invokeMethod(getPreparedSql, advice.getTarget());
-                        checkSqlAndPrintLog(sql, advice.getTarget().getClass().getName(), advice.getBehavior().getName());
-                    }
-
-                    @Override
-                    public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                    public void afterReturning(Advice advice) throws Throwable {
+                        if ("next".equals(advice.getBehavior().getName())) {
+                            if (Boolean.TRUE.equals(advice.getReturnObj())) {
+                                rowMonitor.next(advice.getTarget());
+                            }
+                        } else {
+                            rowMonitor.closed(advice.getTarget(), RequestContext.sequence(RequestContext.current(requestInfoThreadLocal)));
+                        }
                     }
                 });
     }
 
+    private void onStatement(Advice advice) throws ProcessControlException {
+        Object target = advice.getTarget();
+        String method = advice.getBehavior().getName();
+        Object[] parameterArray = advice.getParameterArray();
+        String sql = null;
+        if (parameterArray != null && parameterArray.length > 0) {
+            if (!(parameterArray[0] instanceof String)) {
+                return;
+            }
+            sql = (String) parameterArray[0];
+        }
+        if ("clearBatch".equals(method) || "close".equals(method)) {
+            SqlBatch.remove(target);
+            return;
+        }
+        if ("addBatch".equals(method)) {
+            // 预编译语句的 addBatch() 不检测, executeBatch 时检测预编译的 sql
+            if (sql != null) {
+                jdbcGuard.mark();
+                addBatch(target, sql, method);
+            }
+            return;
+        }
+        // 没有 sql 参数: 预编译语句执行, sql 是预编译的模板
+        boolean prepared = sql == null;
+        if (prepared) {
+            sql = sqlExtractors.extract(target);
+        }
+        if (method.endsWith("Batch")) {
+            SqlBatch batch = SqlBatch.remove(target);
+            if (batch != null) {
+                jdbcGuard.mark();
+                if (sql != null) {
+                    batch.add(sql);
+                }
+                checkBatchAndPrintLog(batch, sqlExtractors.dialect(target), target.getClass().getName(), method);
+                return;
+            }
+        }
+        if (sql != null) {
+            jdbcGuard.mark();
+            checkSqlAndPrintLog(sql, prepared, sqlExtractors.dialect(target), target.getClass().getName(), method);
+        }
+    }
+
+    // 检测 sql, 预编译的 sql 模板重复执行时只查一次缓存; 拼接执行的 sql 文本很少重复, 只按结构缓存
+    // 请求中的 sql 还要检查是否有请求参数改变了 sql 的结构, 这个结果与请求有关, 不缓存
+    private SqlVerdict checkSql(String sql, boolean prepared, SqlDialect dialect, HashMap<String, Object> requestInfo, boolean inRequest) {
+        SqlVerdict verdict = prepared ? verdictCache.get(sql, dialect) : null;
+        if (verdict == null) {
+            SqlLexer lexer = SqlLexer.analyze(sql, dialect);
+            verdict = verdictCache.resolve(lexer);
+            String parameter = inRequest ? ParameterMatcher.current(requestInfo).match(sql, lexer) : null;
+            if (parameter != null) {
+                return verdict.withParameter(parameter);
+            }
+            // 模板中的常量(例如 deleted = 0)不影响缓存
+            if (prepared) {
+                verdictCache.put(sql, dialect, verdict);
+            }
+        }
+        return verdict;
+    }
 
-    private void checkSqlAndPrintLog(String sql, String className, String method) throws ProcessControlException {
-        long start = System.nanoTime();
+    // 当前线程的检测策略: 请求中全部检测, 请求之外的线程按策略检测
+    private ThreadPolicy policy(HashMap<String, Object> requestInfo) {
+        return RequestContext.isActive(requestInfo) ? ThreadPolicy.FULL : backgroundPolicy;
+    }
 
-        // 获取上下文参数
-        HashMap<String, Object> stringObjectHashMap = requestInfoThreadLocal.get();
-        HashMap<String, Object> result = new HashMap<String, Object>(stringObjectHashMap);
+    private void addBatch(Object statement, String sql, String method) throws ProcessControlException {
+        HashMap<String, Object> requestInfo = RequestContext.current(requestInfoThreadLocal);
+        ThreadPolicy policy = policy(requestInfo);
+        if (policy == ThreadPolicy.SKIP) {
+            return;
+        }
+        SqlBatch batch = SqlBatch.of(statement);
+        if (batch == null) {
+            // 缓冲的语句已满, 这一条直接检测
+            checkSqlAndPrintLog(sql, false, sqlExtractors.dialect(statement), statement.getClass().getName(), method);
+            return;
+        }
+        // 缓冲已满时先检测, 结果留在批次中
+        if (batch.add(sql)) {
+            foldBatch(batch, sqlExtractors.dialect(statement), requestInfo, policy == ThreadPolicy.FULL);
+        }
+    }
 
-        // sql
-        result.put("sql", sql);
+    private void foldBatch(SqlBatch batch, SqlDialect dialect, HashMap<String, Object> requestInfo, boolean inRequest) {
+        for (String sql : batch.drain()) {
+            batch.record(checkSql(sql, false, dialect, requestInfo, inRequest), sql);
+        }
+    }
 
-        // 获取栈
-        ArrayList<String> stackTrace = StackTrace.getStackTrace();
-        result.put("stackTrace", stackTrace);
+    private void checkSqlAndPrintLog(String sql, boolean prepared, SqlDialect dialect, String className, String method) throws ProcessControlException {
+        HashMap<String, Object> requestInfo = RequestContext.current(requestInfoThreadLocal);
+        ThreadPolicy policy = policy(requestInfo);
+        if (policy == ThreadPolicy.SKIP) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        HookMetrics hookMetrics = metricsRegistry.hook(className, method);
+        SqlVerdict verdict = checkSql(sql, prepared, dialect, requestInfo, policy == ThreadPolicy.FULL);
+        rowMonitor.expect(verdict);
+        if (verdict.getScore() < SqlVerdict.ALERT_SCORE) {
+            hookMetrics.record(System.nanoTime() - start);
+            return;
+        }
+
+        boolean blockStatus = enableBlock && verdict.getScore() >= blockScore;
+        verdict.alert();
 
-        // 输出日志
-        String s = jsonObject.toJSONString(result);
-        logger.warn(s);
+        // 告警限流: 按 sql 结构指纹, 只有字面量不同的 sql 合并
+        long suppressed = alertRateLimiter.tryAcquire(className, method, verdict.getFingerprint(), sql);
+        if (suppressed >= 0) {
+            AlertEvent result = newAlert(policy, requestInfo, sql, verdict, suppressed);
+            alertPipeline.emit(result);
+        }
+        hookMetrics.alert();
+        if (blockStatus) {
+            hookMetrics.block();
+        }
 
         // 耗时统计
-        long end = System.nanoTime();
-        logger.info("方法: {}, 耗时: {} ms", className + "#" + method, (end - start) / 1000000.0);
+        hookMetrics.record(System.nanoTime() - start);
 
         // 抛出异常阻断
-        if (enableBlock) {
+        if (blockStatus) {
             String info = " sql [" + sql + "] block by rasp.";
             ProcessControlException.throwThrowsImmediately(new RuntimeException(info));
         }
     }
 
+    // 批量执行: 按结构指纹去重后统一告警, 告警的主体是分数最高的结构, 其他结构放在 batchShapes 中
+    private void checkBatchAndPrintLog(SqlBatch batch, SqlDialect dialect, String className, String method) throws ProcessControlException {
+        HashMap<String, Object> requestInfo = RequestContext.current(requestInfoThreadLocal);
+        ThreadPolicy policy = policy(requestInfo);
+        if (policy == ThreadPolicy.SKIP) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        HookMetrics hookMetrics = metricsRegistry.hook(className, method);
+        foldBatch(batch, dialect, requestInfo, policy == ThreadPolicy.FULL);
+        SqlBatch.Shape top = batch.top();
+        if (top == null) {
+            hookMetrics.record(System.nanoTime() - start);
+            return;
+        }
+
+        SqlVerdict verdict = top.getVerdict();
+        boolean blockStatus = enableBlock && verdict.getScore() >= blockScore;
+        List<Map<String, Object>> shapes = new ArrayList<Map<String, Object>>();
+        for (SqlBatch.Shape shape : batch.getShapes()) {
+            shape.getVerdict().alert();
+            shapes.add(shape.toMap());
+        }
+
+        long suppressed = alertRateLimiter.tryAcquire(className, method, verdict.getFingerprint(), top.getSql());
+        if (suppressed >= 0) {
+            AlertEvent result = newAlert(policy, requestInfo, top.getSql(), verdict, suppressed);
+            result.put("batchSize", batch.size());
+            result.put("batchShapes", shapes);
+            if (batch.getDropped() > 0) {
+                result.put("batchDropped", batch.getDropped());
+            }
+            alertPipeline.emit(result);
+        }
+        hookMetrics.alert();
+        if (blockStatus) {
+            hookMetrics.block();
+        }
+        hookMetrics.record(System.nanoTime() - start);
+
+        if (blockStatus) {
+            String info = " batch sql [" + top.getSql() + "] block by rasp.";
+            ProcessControlException.throwThrowsImmediately(new RuntimeException(info));
+        }
+    }
+
+    // 结果集行数远超历史, 只告警不阻断; 结果集属于之前的请求时不附带当前请求的上下文
+    private void rowsAndPrintLog(String className, SqlVerdict verdict, long rows, long baselineRows, boolean sameRequest) {
+        HashMap<String, Object> requestInfo = RequestContext.current(requestInfoThreadLocal);
+        ThreadPolicy policy = policy(requestInfo);
+        if (policy == ThreadPolicy.SKIP) {
+            return;
+        }
+        HookMetrics hookMetrics = metricsRegistry.hook(className, "close");
+        long suppressed = alertRateLimiter.tryAcquire(className, "close", verdict.getFingerprint(), verdict.getPattern());
+        if (suppressed >= 0) {
+            AlertEvent result = new AlertEvent(policy == ThreadPolicy.FULL && sameRequest ? RequestContext.snapshot(requestInfo) : RequestContext.Snapshot.EMPTY);
+            result.put("sqlPattern", verdict.getPattern());
+            result.put("fingerprint", Long.toHexString(verdict.getFingerprint()));
+            result.put("reasons", Collections.singletonList("bulkRows"));
+            result.put("rows", rows);
+            result.put("baselineRows", baselineRows);
+            if (suppressed > 0) {
+                result.put("suppressed", suppressed);
+            }
+            stackInterner.putStack(result, StackTrace.capture());
+            alertPipeline.emit(result);
+        }
+        hookMetrics.alert();
+    }
+
+    private AlertEvent newAlert(ThreadPolicy policy, HashMap<String, Object> requestInfo, String sql, SqlVerdict verdict, long suppressed) {
+        // 获取上下文参数
+        AlertEvent result = new AlertEvent(policy == ThreadPolicy.FULL ? RequestContext.snapshot(requestInfo) : RequestContext.Snapshot.EMPTY);
+
+        // sql
+        result.put("sql", sql);
+        result.put("sqlPattern", verdict.getPattern());
+        result.put("fingerprint", Long.toHexString(verdict.getFingerprint()));
+        result.put("score", verdict.getScore());
+        result.put("reasons", verdict.getReasons());
+        if (verdict.getParameter() != null) {
+            result.put("parameter", verdict.getParameter());
+        }
+        if (suppressed > 0) {
+            result.put("suppressed", suppressed);
+        }
 
+        // 获取栈
+        CapturedStack stackTrace = StackTrace.capture();
+        stackInterner.putStack(result, stackTrace);
+        return result;
+    }
 }
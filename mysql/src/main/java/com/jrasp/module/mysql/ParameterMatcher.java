@@ -0,0 +1,178 @@
+package com.jrasp.module.mysql;
+
+import com.jrasp.module.common.AhoCorasick;
+import com.jrasp.module.common.RequestContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// sql 中的请求参数检测: sql 中出现了请求参数的值, 并且这个值改变了 sql 的结构(跨越了多个 token)时认为是注入
+// 请求第一次检测 sql 时才用参数值构建 Aho-Corasick 自动机, 之后这个请求的每条 sql 只需要线性扫描一遍, 不访问数据库的请求没有开销
+// 自动机按线程缓存, 请求序号、参数map或者请求体变化时重建
+public class ParameterMatcher {
+
+    // 比这个短的参数值不参与匹配
+    public final static int MIN_LENGTH = 4;
+
+    // 过长的参数值不参与匹配
+    private final static int MAX_VALUE_LENGTH = 1024;
+
+    // 参与匹配的参数值总长度上限, 限制自动机的大小
+    private final static int MAX_TOTAL_LENGTH = 16 * 1024;
+
+    private final static ThreadLocal<ParameterMatcher> LOCAL = new ThreadLocal<ParameterMatcher>() {
+        @Override
+        protected ParameterMatcher initialValue() {
+            return new ParameterMatcher();
+        }
+    };
+
+    private long sequence = -1;
+
+    private Map<String, String[]> parameterMap;
+
+    private int bodyLength;
+
+    // 已经加入的参数值总长度
+    private int total;
+
+    // 没有需要匹配的参数值时为 null
+    private AhoCorasick automaton;
+
+    // 返回当前线程复用的对象, 只能在当前 hook 调用中使用
+    public static ParameterMatcher current(Map<String, Object> requestInfo) {
+        ParameterMatcher matcher = LOCAL.get();
+        matcher.refresh(requestInfo);
+        return matcher;
+    }
+
+    // 返回改变了 sql 结构的参数值, 没有时返回 null
+    public String match(String sql, SqlLexer lexer) {
+        AhoCorasick automaton = this.automaton;
+        if (automaton == null) {
+            return null;
+        }
+        int state = AhoCorasick.ROOT;
+        for (int i = 0; i < sql.length(); i++) {
+            state = automaton.next(state, sql.charAt(i));
+            for (int m = automaton.firstMatch(state); m >= 0; m = automaton.nextMatch(m)) {
+                String value = automaton.getPattern(automaton.matched(m));
+                if (lexer.changesStructure(i + 1 - value.length(), i + 1)) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void refresh(Map<String, Object> requestInfo) {
+        long sequence = RequestContext.sequence(requestInfo);
+        Map<String, String[]> parameterMap = RequestContext.parameterMap(requestInfo);
+        CharSequence body = RequestContext.parameterBody(requestInfo);
+        int bodyLength = body == null ? 0 : body.length();
+        // 请求体在业务代码读取时才追加, 长度变化时重建
+        if (sequence == this.sequence && parameterMap == this.parameterMap && bodyLength == this.bodyLength) {
+            return;
+        }
+        this.sequence = sequence;
+        this.parameterMap = parameterMap;
+        this.bodyLength = bodyLength;
+        List<String> values = new ArrayList<String>();
+        total = 0;
+        if (parameterMap != null) {
+            for (String[] parameterValues : parameterMap.values()) {
+                if (parameterValues != null) {
+                    for (String value : parameterValues) {
+                        add(values, value);
+                    }
+                }
+            }
+        }
+        if (body != null) {
+            addBody(values, body);
+        }
+        automaton = values.isEmpty() ? null : AhoCorasick.compile(values.toArray(new String[values.size()]), false, false);
+    }
+
+    // json 请求体取出所有字符串, 其他请求体整体作为一个值; 表单请求体已经在参数map中
+    private void addBody(List<String> values, CharSequence body) {
+        int n = body.length();
+        int i = 0;
+        while (i < n && body.charAt(i) <= ' ') {
+            i++;
+        }
+        if (i == n) {
+            return;
+        }
+        if (body.charAt(i) != '{' && body.charAt(i) != '[') {
+            if (n <= MAX_VALUE_LENGTH) {
+                add(values, body.toString());
+            }
+            return;
+        }
+        StringBuilder value = new StringBuilder();
+        while (i < n) {
+            if (body.charAt(i++) != '"') {
+                continue;
+            }
+            value.setLength(0);
+            while (i < n && body.charAt(i) != '"') {
+                char c = body.charAt(i++);
+                if (c == '\\' && i < n) {
+                    c = body.charAt(i++);
+                    switch (c) {
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 'u':
+                            if (i + 4 <= n) {
+                                try {
+                                    c = (char) Integer.parseInt(body.subSequence(i, i + 4).toString(), 16);
+                                    i += 4;
+                                } catch (NumberFormatException e) {
+                                    // 原样保留
+                                }
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                value.append(c);
+            }
+            i++;
+            if (value.length() >= MIN_LENGTH && value.length() <= MAX_VALUE_LENGTH) {
+                add(values, value.toString());
+            }
+        }
+    }
+
+    // 只由字母数字组成的值不可能跨越多个 token, 只有空白和符号的值会和 sql 中的空白混淆, 都不参与匹配
+    private void add(List<String> values, String value) {
+        if (value == null || value.length() < MIN_LENGTH || value.length() > MAX_VALUE_LENGTH
+                || total + value.length() > MAX_TOTAL_LENGTH) {
+            return;
+        }
+        boolean letterOrDigit = false;
+        boolean separator = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                letterOrDigit = true;
+            } else {
+                separator = true;
+            }
+        }
+        if (letterOrDigit && separator) {
+            values.add(value);
+            total += value.length();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jrasp.module.mysql;
+
+// 一种 sql 结构返回行数的历史分布: 按 2 的幂分桶, 指数衰减, 越新的样本权重越大
+// 使用前向衰减: 样本权重为 e^(λ(t - landmark)), 查询时不需要衰减已有的桶; 权重过大时把 landmark 移到当前时间并整体缩小
+// 只在结果集关闭时记录, 频率远低于 next, 使用锁
+public class RowBaseline {
+
+    // 半衰期 1 小时
+    private final static double LAMBDA = Math.log(2) / (60 * 60 * 1000);
+
+    // 第 0 个桶为 0 行, 第 b 个桶为 [2^(b-1), 2^b)
+    private final static int BUCKETS = 32;
+
+    private final static double RESCALE_WEIGHT = 1e12;
+
+    // 第一次记录时创建, 不返回结果集的 sql 结构不占用
+    private double[] weights;
+
+    private double total;
+
+    private long samples;
+
+    private long landmark;
+
+    public synchronized void record(long rows, long now) {
+        if (weights == null) {
+            weights = new double[BUCKETS];
+            landmark = now;
+        }
+        double weight = Math.exp(LAMBDA * (now - landmark));
+        if (weight > RESCALE_WEIGHT) {
+            for (int i = 0; i < BUCKETS; i++) {
+                weights[i] /= weight;
+            }
+            total /= weight;
+            landmark = now;
+            weight = 1;
+        }
+        weights[bucket(rows)] += weight;
+        total += weight;
+        samples++;
+    }
+
+    // 按衰减之后的权重计算分位数, 返回桶的上界; 没有样本时返回 0
+    public synchronized long percentile(double quantile) {
+        if (weights == null) {
+            return 0;
+        }
+        double rank = quantile * total;
+        double seen = 0;
+        int last = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (weights[i] > 0) {
+                seen += weights[i];
+                last = i;
+                if (seen >= rank) {
+                    break;
+                }
+            }
+        }
+        // 累加的舍入误差可能使 seen 略小于 rank, 此时取最后一个非空的桶
+        return last == 0 ? 0 : (1L << last) - 1;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    private static int bucket(long rows) {
+        if (rows <= 0) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(rows), BUCKETS - 1);
+    }
+}
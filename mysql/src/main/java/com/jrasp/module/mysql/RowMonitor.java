@@ -0,0 +1,213 @@
+package com.jrasp.module.mysql;
+
+import com.jrasp.module.common.LogLinearHistogram;
+
+import java.sql.ResultSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 结果集行数统计: 检测过的查询返回的结果集登记在当前线程中, ResultSet.next 返回 true 时在数组中计数, 不创建对象
+// 结果集关闭时与这种 sql 结构的历史行数分布比较, 远超历史分位数时告警; 没有历史的结构只按绝对行数告警
+// 没有关闭的结果集在登记数量超过 MAX_OPEN 或者线程开始处理下一个请求时结束; 每个结果集记录登记时的请求序号,
+// 结束时已经不是同一个请求的, 告警不能使用当前线程的请求上下文
+// 每个请求读取的总行数在线程处理下一个请求时记录到分布中
+public class RowMonitor {
+
+    public interface Listener {
+        // sameRequest 为 false 时结果集属于线程之前处理的请求
+        void onOutlier(Object resultSet, SqlVerdict verdict, long rows, long baselineRows, boolean sameRequest);
+    }
+
+    // 每个线程同时登记的结果集数量上限, 超过时结束最早的
+    private final static int MAX_OPEN = 8;
+
+    // 比较时使用的历史分位数
+    private final static double BASELINE_QUANTILE = 0.99;
+
+    // 历史样本少于这个数量时不按分布比较
+    private final static int MIN_SAMPLES = 20;
+
+    private final ThreadLocal<State> local = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    private final Listener listener;
+
+    // 每个请求读取的总行数
+    private final LogLinearHistogram requestRows = new LogLinearHistogram();
+
+    // 行数不少于 minRows, 并且超过历史分位数的 factor 倍时告警
+    private volatile long minRows = 1000;
+
+    private volatile int factor = 10;
+
+    // 没有历史的结构行数不少于 maxRows 时告警
+    private volatile long maxRows = 100000;
+
+    public RowMonitor(Listener listener) {
+        this.listener = listener;
+    }
+
+    // 检测 sql 之后调用, 这次执行返回的结果集使用这个检测结果
+    public void expect(SqlVerdict verdict) {
+        local.get().pending = verdict;
+    }
+
+    // 执行返回之后调用, result 不是结果集时只清除 expect 的结果; sequence 为当前请求的序号, 不在请求中时为 0
+    public void opened(Object result, long sequence) {
+        State state = local.get();
+        SqlVerdict verdict = state.pending;
+        state.pending = null;
+        if (sequence != state.sequence) {
+            // 线程开始处理下一个请求
+            for (int i = 0; i < MAX_OPEN; i++) {
+                finish(state, i, sequence);
+            }
+            if (state.sequence != 0) {
+                requestRows.record(state.requestRows);
+            }
+            state.sequence = sequence;
+            state.requestRows = 0;
+        }
+        if (verdict == null || !(result instanceof ResultSet)) {
+            return;
+        }
+        int slot = -1;
+        for (int i = 0; i < MAX_OPEN && slot < 0; i++) {
+            if (state.resultSets[i] == null) {
+                slot = i;
+            }
+        }
+        if (slot < 0) {
+            slot = state.oldest;
+            state.oldest = (state.oldest + 1) % MAX_OPEN;
+            finish(state, slot, sequence);
+        }
+        state.resultSets[slot] = result;
+        state.verdicts[slot] = verdict;
+        state.rows[slot] = 0;
+        state.sequences[slot] = sequence;
+        state.open++;
+    }
+
+    // next 返回 true 之后调用
+    public void next(Object resultSet) {
+        State state = local.get();
+        if (state.open == 0) {
+            return;
+        }
+        Object[] resultSets = state.resultSets;
+        for (int i = 0; i < MAX_OPEN; i++) {
+            if (resultSets[i] == resultSet) {
+                state.rows[i]++;
+                return;
+            }
+        }
+    }
+
+    // sequence 为当前请求的序号, 不在请求中时为 0
+    public void closed(Object resultSet, long sequence) {
+        State state = local.get();
+        if (state.open == 0) {
+            return;
+        }
+        for (int i = 0; i < MAX_OPEN; i++) {
+            if (state.resultSets[i] == resultSet) {
+                finish(state, i, sequence);
+                return;
+            }
+        }
+    }
+
+    // sequence 为当前请求的序号, 与登记时的序号比较
+    private void finish(State state, int slot, long sequence) {
+        Object resultSet = state.resultSets[slot];
+        if (resultSet == null) {
+            return;
+        }
+        SqlVerdict verdict = state.verdicts[slot];
+        long rows = state.rows[slot];
+        state.resultSets[slot] = null;
+        state.verdicts[slot] = null;
+        state.open--;
+        if (state.sequence != 0) {
+            state.requestRows += rows;
+        }
+
+        // 先比较再记录, 告警的行数也进入历史, 持续的大结果集不会一直告警
+        RowBaseline baseline = verdict.getRowBaseline();
+        long samples = baseline.getSamples();
+        long baselineRows = baseline.percentile(BASELINE_QUANTILE);
+        boolean outlier = samples < MIN_SAMPLES
+                ? rows >= maxRows
+                : rows >= minRows && rows > baselineRows * factor;
+        baseline.record(rows, System.currentTimeMillis());
+        if (outlier) {
+            listener.onOutlier(resultSet, verdict, rows, baselineRows, state.sequences[slot] == sequence);
+        }
+    }
+
+    public void configure(long minRows, int factor, long maxRows) {
+        this.minRows = minRows;
+        this.factor = factor;
+        this.maxRows = maxRows;
+    }
+
+    public Map<String, Object> status() {
+        LogLinearHistogram.Snapshot snapshot = requestRows.snapshot();
+        Map<String, Object> rows = new LinkedHashMap<String, Object>(8);
+        rows.put("requests", snapshot.getCount());
+        rows.put("p50", snapshot.percentile(0.5));
+        rows.put("p99", snapshot.percentile(0.99));
+        rows.put("max", snapshot.getMax());
+        Map<String, Object> status = new LinkedHashMap<String, Object>(8);
+        status.put("minRows", minRows);
+        status.put("factor", factor);
+        status.put("maxRows", maxRows);
+        status.put("requestRows", rows);
+        return status;
+    }
+
+    public void reset() {
+        requestRows.reset();
+    }
+
+    public long getMinRows() {
+        return minRows;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    private static class State {
+
+        private SqlVerdict pending;
+
+        private final Object[] resultSets = new Object[MAX_OPEN];
+
+        private final SqlVerdict[] verdicts = new SqlVerdict[MAX_OPEN];
+
+        private final long[] rows = new long[MAX_OPEN];
+
+        // 登记时的请求序号
+        private final long[] sequences = new long[MAX_OPEN];
+
+        private int open;
+
+        // 登记已满时下一个结束的位置
+        private int oldest;
+
+        // 当前请求的序号和已经读取的行数
+        private long sequence;
+
+        private long requestRows;
+    }
+}
@@ -0,0 +1,189 @@
+package com.jrasp.module.mysql;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 批量执行的 sql 缓冲: addBatch 只把 sql 追加到语句对应的缓冲中, executeBatch 时统一检测,
+// 按结构指纹去重, 每个批次最多输出一条告警
+// 缓冲按语句对象的引用保存在全局的分段表中, addBatch 和 executeBatch 可以在不同线程; 每段最多保留 STATEMENTS_PER_STRIPE 个语句的缓冲,
+// 没有空位时由调用方直接检测 addBatch 的 sql; 语句关闭时释放缓冲, 缓冲只弱引用语句, 没有关闭就被回收的语句让出位置
+// 单个缓冲超过 MAX_PENDING 条时先检测已有的部分, 内存只与告警的 sql 结构数量有关
+public class SqlBatch {
+
+    // 缓冲的 sql 条数上限, 超过时先检测
+    public final static int MAX_PENDING = 4096;
+
+    // 每个批次保留的告警结构数量上限
+    private final static int MAX_SHAPES = 64;
+
+    private final static int STRIPES = 16;
+
+    private final static int STATEMENTS_PER_STRIPE = 16;
+
+    // 按 identityHashCode 分段, 每段在自己的锁内线性查找
+    private final static SqlBatch[][] TABLE = new SqlBatch[STRIPES][STATEMENTS_PER_STRIPE];
+
+    private final WeakReference<Object> statement;
+
+    private List<String> pending = new ArrayList<String>();
+
+    // 结构指纹 -> 告警的结构
+    private final Map<Long, Shape> shapes = new LinkedHashMap<Long, Shape>();
+
+    // 批次中的 sql 条数
+    private int size;
+
+    // 超过 MAX_SHAPES 之后没有保留的告警条数
+    private int dropped;
+
+    private SqlBatch(Object statement) {
+        this.statement = new WeakReference<Object>(statement);
+    }
+
+    // 语句对应的缓冲, 没有时创建; 没有空位时返回 null, 不丢弃其他语句还没有检测的 sql
+    public static SqlBatch of(Object statement) {
+        SqlBatch[] batches = stripe(statement);
+        synchronized (batches) {
+            int free = -1;
+            for (int i = 0; i < batches.length; i++) {
+                SqlBatch batch = batches[i];
+                Object owner = batch == null ? null : batch.statement.get();
+                if (owner == statement && owner != null) {
+                    return batch;
+                }
+                if (owner == null && free < 0) {
+                    free = i;
+                }
+            }
+            if (free < 0) {
+                return null;
+            }
+            SqlBatch batch = new SqlBatch(statement);
+            batches[free] = batch;
+            return batch;
+        }
+    }
+
+    // 取出并移除语句对应的缓冲, 没有时返回 null
+    public static SqlBatch remove(Object statement) {
+        SqlBatch[] batches = stripe(statement);
+        synchronized (batches) {
+            for (int i = 0; i < batches.length; i++) {
+                if (batches[i] != null && batches[i].statement.get() == statement) {
+                    SqlBatch batch = batches[i];
+                    batches[i] = null;
+                    return batch;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static SqlBatch[] stripe(Object statement) {
+        int h = System.identityHashCode(statement);
+        return TABLE[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    // 返回 true 表示缓冲已满, 需要先检测
+    public synchronized boolean add(String sql) {
+        pending.add(sql);
+        size++;
+        return pending.size() >= MAX_PENDING;
+    }
+
+    // 取出还没有检测的 sql
+    public synchronized List<String> drain() {
+        List<String> result = pending;
+        pending = new ArrayList<String>();
+        return result;
+    }
+
+    // 记录一条 sql 的检测结果, 只保留达到告警分数的结构
+    public synchronized void record(SqlVerdict verdict, String sql) {
+        if (verdict.getScore() < SqlVerdict.ALERT_SCORE) {
+            return;
+        }
+        Shape shape = shapes.get(verdict.getFingerprint());
+        if (shape == null) {
+            if (shapes.size() >= MAX_SHAPES) {
+                dropped++;
+                return;
+            }
+            shape = new Shape(verdict, sql);
+            shapes.put(verdict.getFingerprint(), shape);
+        } else if (verdict.getScore() > shape.verdict.getScore()) {
+            // 同一结构中请求参数注入的分数更高
+            shape.verdict = verdict;
+            shape.sql = sql;
+        }
+        shape.count++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getDropped() {
+        return dropped;
+    }
+
+    public synchronized Collection<Shape> getShapes() {
+        return new ArrayList<Shape>(shapes.values());
+    }
+
+    // 分数最高的结构, 没有告警时返回 null
+    public synchronized Shape top() {
+        Shape top = null;
+        for (Shape shape : shapes.values()) {
+            if (top == null || shape.verdict.getScore() > top.verdict.getScore()) {
+                top = shape;
+            }
+        }
+        return top;
+    }
+
+    public static class Shape {
+
+        private SqlVerdict verdict;
+
+        // 这个结构的 sql 样例
+        private String sql;
+
+        private int count;
+
+        Shape(SqlVerdict verdict, String sql) {
+            this.verdict = verdict;
+            this.sql = sql;
+        }
+
+        public SqlVerdict getVerdict() {
+            return verdict;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> item = new LinkedHashMap<String, Object>(8);
+            item.put("sql", sql);
+            item.put("sqlPattern", verdict.getPattern());
+            item.put("fingerprint", Long.toHexString(verdict.getFingerprint()));
+            item.put("score", verdict.getScore());
+            item.put("reasons", verdict.getReasons());
+            if (verdict.getParameter() != null) {
+                item.put("parameter", verdict.getParameter());
+            }
+            item.put("count", count);
+            return item;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jrasp.module.mysql;
+
+// sql 方言, 影响词法分析:
+//   || 和 && 在 mysql 中是 or 和 and, 在标准 sql(postgresql、oracle、h2 等)中 || 是字符串拼接
+//   mysql 的字符串中 \ 是转义符, 标准 sql 中只有 '' 是转义, \ 是普通字符(postgresql 的 E'..' 除外)
+//   mysql 中 "..." 是字符串, 标准 sql 中是带引号的标识符
+//   # 行注释和 /*! */ 可执行注释只在 mysql 中有效, 标准 sql 中 # 是运算符, /*! */ 是普通注释
+public enum SqlDialect {
+    MYSQL(true, true, true, true),
+    STANDARD(false, false, false, false);
+
+    // 驱动实现类的包名前缀
+    private final static String[] MYSQL_PREFIXES = {"com.mysql.", "org.mariadb.", "org.gjt.mm.mysql."};
+
+    private final static String[] STANDARD_PREFIXES = {
+            "org.postgresql.", "oracle.jdbc.", "org.h2.", "org.hsqldb.", "org.apache.derby.", "com.microsoft.sqlserver.",
+            "net.sourceforge.jtds.", "org.sqlite.", "com.ibm.db2.", "dm.jdbc.", "com.kingbase"
+    };
+
+    private final boolean logicalPipes;
+
+    private final boolean backslashEscapes;
+
+    private final boolean doubleQuotedStrings;
+
+    private final boolean mysqlComments;
+
+    SqlDialect(boolean logicalPipes, boolean backslashEscapes, boolean doubleQuotedStrings, boolean mysqlComments) {
+        this.logicalPipes = logicalPipes;
+        this.backslashEscapes = backslashEscapes;
+        this.doubleQuotedStrings = doubleQuotedStrings;
+        this.mysqlComments = mysqlComments;
+    }
+
+    // || 和 && 是否为逻辑运算符
+    public boolean isLogicalPipes() {
+        return logicalPipes;
+    }
+
+    // 字符串中的 \ 是否为转义符
+    public boolean isBackslashEscapes() {
+        return backslashEscapes;
+    }
+
+    // "..." 是否为字符串
+    public boolean isDoubleQuotedStrings() {
+        return doubleQuotedStrings;
+    }
+
+    // 是否支持 # 行注释和 /*! */ 可执行注释
+    public boolean isMysqlComments() {
+        return mysqlComments;
+    }
+
+    // 按驱动实现类的包名判断, 连接池代理等无法判断的实现类返回 null
+    public static SqlDialect ofDriverClass(String className) {
+        for (String prefix : MYSQL_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return MYSQL;
+            }
+        }
+        for (String prefix : STANDARD_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return STANDARD;
+            }
+        }
+        return null;
+    }
+
+    // 按数据库产品名判断, 兼容 mysql 协议的数据库(mariadb、tidb 等)一般返回 MySQL
+    public static SqlDialect ofProductName(String productName) {
+        String name = productName == null ? "" : productName.toLowerCase();
+        return name.contains("mysql") || name.contains("mariadb") ? MYSQL : STANDARD;
+    }
+}
@@ -0,0 +1,93 @@
+package com.jrasp.module.mysql;
+
+import com.jrasp.module.common.MemberAccessor;
+import com.jrasp.module.common.ReflectUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// 从预编译语句的实现类中取出 sql 文本: 一条由字段和无参方法组成的访问路径, 例如 preparedQuery.query.getNativeSql()
+// 按实现类解析一次, 调用时不再查找字段和方法, jdk7+ 通过 MethodHandle 读取; 取不到时返回 null
+public abstract class SqlExtractor {
+
+    // 实现类中没有可用的访问路径(例如连接池的代理), 由内层驱动的调用取 sql
+    public final static SqlExtractor NONE = new SqlExtractor() {
+        @Override
+        public String extract(Object statement) {
+            return null;
+        }
+
+        @Override
+        public String describe() {
+            return "none";
+        }
+    };
+
+    public abstract String extract(Object statement);
+
+    public abstract String describe();
+
+    // 在 clazz 上解析访问路径, 路径不存在或者最后不是 String 时返回 null
+    public static SqlExtractor resolve(Class<?> clazz, String path) {
+        String[] segments = path.split("\\.");
+        MemberAccessor[] accessors = new MemberAccessor[segments.length];
+        Class<?> type = clazz;
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            try {
+                if (segment.endsWith("()")) {
+                    Method method = ReflectUtils.findMethod(type, segment.substring(0, segment.length() - 2));
+                    if (method == null) {
+                        return null;
+                    }
+                    accessors[i] = MemberAccessor.of(method);
+                    type = method.getReturnType();
+                } else {
+                    Field field = ReflectUtils.findField(type, segment);
+                    if (field == null) {
+                        return null;
+                    }
+                    accessors[i] = MemberAccessor.of(field);
+                    type = field.getType();
+                }
+            } catch (RuntimeException e) {
+                // jdk9+ 模块不允许访问
+                return null;
+            }
+        }
+        return type == String.class ? new PathExtractor(path, accessors) : null;
+    }
+
+    static class PathExtractor extends SqlExtractor {
+
+        private final String path;
+
+        private final MemberAccessor[] accessors;
+
+        PathExtractor(String path, MemberAccessor[] accessors) {
+            this.path = path;
+            this.accessors = accessors;
+        }
+
+        @Override
+        public String extract(Object statement) {
+            Object value = statement;
+            try {
+                for (MemberAccessor accessor : accessors) {
+                    value = accessor.get(value);
+                    if (value == null) {
+                        return null;
+                    }
+                }
+            } catch (Throwable e) {
+                return null;
+            }
+            return (String) value;
+        }
+
+        @Override
+        public String describe() {
+            return path;
+        }
+    }
+}
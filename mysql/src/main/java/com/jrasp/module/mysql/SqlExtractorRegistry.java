@@ -0,0 +1,128 @@
+package com.jrasp.module.mysql;
+
+import com.jrasp.module.common.ClassKeyedCache;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 预编译语句实现类 -> sql 提取器, 每个实现类第一次执行时按顺序尝试已知驱动的访问路径, 之后直接使用缓存的结果
+// 同时按实现类记录 sql 方言: 驱动的实现类按包名判断, 连接池代理按第一次执行时连接的数据库产品名判断
+public class SqlExtractorRegistry {
+
+    // 已知驱动的访问路径, 按顺序尝试
+    private final static String[] DEFAULT_PATHS = {
+            // mysql 5.x com.mysql.jdbc.PreparedStatement, 8.x com.mysql.cj.jdbc.ClientPreparedStatement
+            "getPreparedSql()",
+            // postgresql org.postgresql.jdbc.PgPreparedStatement
+            "preparedQuery.query.getNativeSql()",
+            // oracle oracle.jdbc.driver.OraclePreparedStatement
+            "getOriginalSql()",
+            // druid DruidPooledPreparedStatement 等连接池代理
+            "getSql()",
+            // h2 org.h2.jdbc.JdbcPreparedStatement
+            "sqlStatement",
+            // mariadb 2.x ClientSidePreparedStatement
+            "sqlQuery",
+            // mariadb ServerSidePreparedStatement, 3.x BasePreparedStatement
+            "sql"
+    };
+
+    // 记录解析结果的实现类数量上限
+    private final static int MAX_RESOLVED = 256;
+
+    private volatile String[] paths = DEFAULT_PATHS;
+
+    private final ClassKeyedCache<SqlExtractor> cache = ClassKeyedCache.create(new ClassKeyedCache.Loader<SqlExtractor>() {
+        @Override
+        public SqlExtractor load(Class<?> clazz) {
+            return resolve(clazz);
+        }
+    });
+
+    private final ClassKeyedCache<DialectHolder> dialects = ClassKeyedCache.create(new ClassKeyedCache.Loader<DialectHolder>() {
+        @Override
+        public DialectHolder load(Class<?> clazz) {
+            return new DialectHolder(SqlDialect.ofDriverClass(clazz.getName()));
+        }
+    });
+
+    // 实现类 -> 访问路径, 只用于查看
+    private final Map<String, String> resolved = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+
+    // 取不到时返回 null
+    public String extract(Object statement) {
+        return cache.get(statement.getClass()).extract(statement);
+    }
+
+    public SqlDialect dialect(Object statement) {
+        DialectHolder holder = dialects.get(statement.getClass());
+        SqlDialect dialect = holder.dialect;
+        if (dialect == null) {
+            if (!(statement instanceof Statement)) {
+                holder.dialect = SqlDialect.MYSQL;
+                return SqlDialect.MYSQL;
+            }
+            try {
+                dialect = SqlDialect.ofProductName(((Statement) statement).getConnection().getMetaData().getDatabaseProductName());
+                holder.dialect = dialect;
+            } catch (Throwable e) {
+                // 语句已经关闭等, 这一次按 mysql 处理, 下一次执行时再判断
+                dialect = SqlDialect.MYSQL;
+            }
+        }
+        return dialect;
+    }
+
+    public Map<String, String> getResolved() {
+        synchronized (resolved) {
+            return new LinkedHashMap<String, String>(resolved);
+        }
+    }
+
+    public List<String> getPaths() {
+        List<String> result = new ArrayList<String>();
+        Collections.addAll(result, paths);
+        return result;
+    }
+
+    // 新增的访问路径优先尝试, 只影响之后第一次执行的实现类
+    public void addPaths(String[] extraPaths) {
+        List<String> result = new ArrayList<String>();
+        for (String path : extraPaths) {
+            if (path.trim().length() > 0) {
+                result.add(path.trim());
+            }
+        }
+        Collections.addAll(result, paths);
+        paths = result.toArray(new String[result.size()]);
+    }
+
+    private SqlExtractor resolve(Class<?> clazz) {
+        SqlExtractor extractor = SqlExtractor.NONE;
+        for (String path : paths) {
+            SqlExtractor candidate = SqlExtractor.resolve(clazz, path);
+            if (candidate != null) {
+                extractor = candidate;
+                break;
+            }
+        }
+        if (resolved.size() < MAX_RESOLVED) {
+            resolved.put(clazz.getName(), extractor.describe());
+        }
+        return extractor;
+    }
+
+    private static class DialectHolder {
+
+        // 没有判断时为 null, 多个线程同时判断的结果相同
+        private volatile SqlDialect dialect;
+
+        DialectHolder(SqlDialect dialect) {
+            this.dialect = dialect;
+        }
+    }
+}
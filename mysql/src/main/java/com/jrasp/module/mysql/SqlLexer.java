@@ -0,0 +1,734 @@
+package com.jrasp.module.mysql;
+
+import com.jrasp.module.common.Fingerprints;
+
+import java.util.Arrays;
+
+// sql 词法分析: 单次扫描 sql, 同时完成
+//   1. 规范化: 字面量和 ? 替换为 ?, in 列表替换为 (?+), 去掉注释和多余空白, 关键字和标识符转小写, 计算 64 位指纹
+//   2. 注入特征: 恒真条件、堆叠查询、注释截断、union select、时间盲注函数
+//   3. 记录每个 token 在 sql 中的位置, 用于判断请求参数是否改变了 sql 的结构
+// 截断语句的注释和可执行注释在规范化结果中保留标记, 特征只由规范化结果决定, 指纹相同的 sql 检测结果相同:
+// 恒真条件只由真正的字面量构成, 占位符 ? 与字面量的规范化文本相同, 但计入指纹的内容不同; 方言也计入指纹
+// 字符串、引号标识符和注释按方言的规则切分, 见 SqlDialect
+// 每个线程复用同一个对象, 不创建字符串
+public class SqlLexer {
+
+    // 规范化结果保留的最大长度, 超过的部分只参与指纹计算
+    private final static int MAX_PATTERN_LENGTH = 1024;
+
+    // 记录位置的最大 token 数
+    private final static int MAX_TOKENS = 4096;
+
+    // token 类型
+    private final static int NONE = 0;
+
+    private final static int WORD = 1;
+
+    private final static int LITERAL = 2;
+
+    private final static int OPERATOR = 3;
+
+    private final static int OPEN = 4;
+
+    private final static int CLOSE = 5;
+
+    private final static int COMMA = 6;
+
+    private final static int SEMICOLON = 7;
+
+    // 注释截断标记
+    private final static int MARKER = 8;
+
+    // in 列表状态
+    private final static int IN_WORD = 1;
+
+    private final static int IN_OPEN = 2;
+
+    private final static int IN_LITERAL = 3;
+
+    private final static int IN_COMMA = 4;
+
+    // 恒真条件状态: or 之后, or 字面量之后, or 字面量 比较符之后
+    private final static int AFTER_OR = 1;
+
+    private final static int AFTER_OR_LITERAL = 2;
+
+    private final static int AFTER_OR_COMPARISON = 3;
+
+    // 关键字和运算符的编号, 每个 token 只查一次
+    private final static int KW_NONE = 0;
+
+    private final static int KW_OR = 1;
+
+    private final static int KW_AND = 2;
+
+    private final static int KW_UNION = 3;
+
+    private final static int KW_SELECT = 4;
+
+    // all distinct
+    private final static int KW_UNION_MODIFIER = 5;
+
+    private final static int KW_IN = 6;
+
+    private final static int KW_NOT = 7;
+
+    // like rlike regexp 以及比较运算符
+    private final static int KW_COMPARISON = 8;
+
+    // order group limit having
+    private final static int KW_CLAUSE = 9;
+
+    // sleep benchmark pg_sleep
+    private final static int KW_TIME_FUNCTION = 10;
+
+    private final static int KW_WAITFOR = 11;
+
+    private final static int KW_DELAY = 12;
+
+    private final static int KW_BOOLEAN = 13;
+
+    private final static int KW_DOT = 14;
+
+    // 预编译语句的占位符 ?, 按字面量规范化, 不参与恒真条件
+    private final static int KW_PLACEHOLDER = 15;
+
+    // 占位符在指纹中追加的内容
+    private final static char PLACEHOLDER_MARK = 0;
+
+    private final static String[] KEYWORDS = {
+            "or", "xor", "and", "union", "select", "all", "distinct", "in", "not", "like", "rlike", "regexp",
+            "order", "group", "limit", "having", "sleep", "benchmark", "pg_sleep", "waitfor", "delay", "true", "false"
+    };
+
+    private final static int[] KEYWORD_CODES = {
+            KW_OR, KW_OR, KW_AND, KW_UNION, KW_SELECT, KW_UNION_MODIFIER, KW_UNION_MODIFIER, KW_IN, KW_NOT,
+            KW_COMPARISON, KW_COMPARISON, KW_COMPARISON, KW_CLAUSE, KW_CLAUSE, KW_CLAUSE, KW_CLAUSE,
+            KW_TIME_FUNCTION, KW_TIME_FUNCTION, KW_TIME_FUNCTION, KW_WAITFOR, KW_DELAY, KW_BOOLEAN, KW_BOOLEAN
+    };
+
+    private final static String[] OPERATORS = {"<=>", "->>", "<=", ">=", "<>", "!=", "||", "&&", ":=", "<<", ">>", "->"};
+
+    private final static int MAX_KEYWORD_LENGTH = 9;
+
+    // 关键字按小写 hash 放入开放寻址表
+    private final static int KEYWORD_TABLE_SIZE = 64;
+
+    private final static String[] KEYWORD_TABLE = new String[KEYWORD_TABLE_SIZE];
+
+    private final static int[] KEYWORD_TABLE_CODES = new int[KEYWORD_TABLE_SIZE];
+
+    static {
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            int slot = KEYWORDS[k].hashCode() & (KEYWORD_TABLE_SIZE - 1);
+            while (KEYWORD_TABLE[slot] != null) {
+                slot = (slot + 1) & (KEYWORD_TABLE_SIZE - 1);
+            }
+            KEYWORD_TABLE[slot] = KEYWORDS[k];
+            KEYWORD_TABLE_CODES[slot] = KEYWORD_CODES[k];
+        }
+    }
+
+    private final static ThreadLocal<SqlLexer> LOCAL = new ThreadLocal<SqlLexer>() {
+        @Override
+        protected SqlLexer initialValue() {
+            return new SqlLexer();
+        }
+    };
+
+    private final char[] pattern = new char[MAX_PATTERN_LENGTH];
+
+    private String sql;
+
+    private SqlDialect dialect;
+
+    // token 在 sql 中的位置, 按起始位置递增
+    private int[] spanStarts = new int[64];
+
+    private int[] spanEnds = new int[64];
+
+    private int[] spanKinds = new int[64];
+
+    private int spanCount;
+
+    private boolean spanOverflow;
+
+    private int patternLength;
+
+    private long hash;
+
+    private int reasons;
+
+    // 上一个 token
+    private int lastKind;
+
+    // 上一个输出到规范化结果的 token
+    private int emittedKind;
+
+    private boolean emittedDot;
+
+    // 检测状态
+    private int tautology;
+
+    private boolean afterUnion;
+
+    private boolean afterSemicolon;
+
+    private boolean afterTimeFunction;
+
+    private boolean afterWaitfor;
+
+    private boolean executableComment;
+
+    // in 列表
+    private int inList;
+
+    private int inLiterals;
+
+    // 返回当前线程复用的结果, 只能在当前 hook 调用中使用
+    public static SqlLexer analyze(String sql, SqlDialect dialect) {
+        SqlLexer lexer = LOCAL.get();
+        lexer.reset(sql, dialect);
+        lexer.scan();
+        return lexer;
+    }
+
+    public long getFingerprint() {
+        return Fingerprints.mix(hash);
+    }
+
+    public int getReasons() {
+        return reasons;
+    }
+
+    public String getPattern() {
+        return new String(pattern, 0, patternLength);
+    }
+
+    // sql 中 [start, end) 这一段是否改变了 sql 的结构: 在同一个 token 之内, 或者恰好是只由字面量和逗号组成的
+    // 完整 token 序列(例如 in 列表)时没有改变; 跨越了其他 token、注释或者只包含 token 的一部分时改变了
+    // token 太多没有全部记录时返回 false
+    public boolean changesStructure(int start, int end) {
+        if (spanOverflow) {
+            return false;
+        }
+        // 最后一个起始位置不大于 start 的 token
+        int low = 0;
+        int high = spanCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (spanStarts[mid] <= start) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high < 0) {
+            return true;
+        }
+        if (end <= spanEnds[high]) {
+            return false;
+        }
+        if (spanStarts[high] != start) {
+            return true;
+        }
+        int position = start;
+        for (int t = high; t < spanCount && spanStarts[t] < end; t++) {
+            if (spanKinds[t] != LITERAL && spanKinds[t] != COMMA) {
+                return true;
+            }
+            for (int i = position; i < spanStarts[t]; i++) {
+                if (sql.charAt(i) > ' ') {
+                    return true;
+                }
+            }
+            position = spanEnds[t];
+        }
+        return position != end;
+    }
+
+    private void reset(String sql, SqlDialect dialect) {
+        this.sql = sql;
+        this.dialect = dialect;
+        patternLength = 0;
+        spanCount = 0;
+        spanOverflow = false;
+        // 同一条 sql 在不同方言中的检测结果可能不同, mysql 之外的方言从不同的种子开始
+        hash = dialect == SqlDialect.MYSQL ? Fingerprints.SEED : Fingerprints.update(Fingerprints.SEED, dialect.ordinal() + 1);
+        reasons = 0;
+        lastKind = NONE;
+        emittedKind = NONE;
+        emittedDot = false;
+        tautology = 0;
+        afterUnion = false;
+        afterSemicolon = false;
+        afterTimeFunction = false;
+        afterWaitfor = false;
+        executableComment = false;
+        inList = 0;
+        inLiterals = 0;
+    }
+
+    private void scan() {
+        String s = sql;
+        SqlDialect d = dialect;
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c <= ' ') {
+                i++;
+                continue;
+            }
+            int start = i;
+            // 行注释: # 或者 "-- ", 到达 sql 末尾时截断了后面的语句
+            if ((c == '#' && d.isMysqlComments()) || (c == '-' && i + 1 < n && s.charAt(i + 1) == '-' && (i + 2 == n || s.charAt(i + 2) <= ' '))) {
+                int end = s.indexOf('\n', i);
+                if (end < 0) {
+                    truncated("--");
+                    break;
+                }
+                i = end + 1;
+                continue;
+            }
+            if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
+                // 可执行注释 /*!50000 ... */, 内容按 sql 处理
+                if (i + 2 < n && s.charAt(i + 2) == '!' && d.isMysqlComments()) {
+                    reasons |= SqlVerdict.COMMENT_TRUNCATION;
+                    token(MARKER, "/*!", 0, 3, KW_NONE);
+                    executableComment = true;
+                    i += 3;
+                    while (i < n && isDigit(s.charAt(i))) {
+                        i++;
+                    }
+                    continue;
+                }
+                int end = s.indexOf("*/", i + 2);
+                if (end < 0) {
+                    truncated("/*");
+                    break;
+                }
+                i = end + 2;
+                continue;
+            }
+            if (c == '*' && executableComment && i + 1 < n && s.charAt(i + 1) == '/') {
+                executableComment = false;
+                i += 2;
+                continue;
+            }
+            if (c == '\'' || (c == '"' && d.isDoubleQuotedStrings())) {
+                i = skipString(s, i, c, d.isBackslashEscapes());
+                literal(start, i);
+                continue;
+            }
+            // 标准 sql 的引号标识符, "" 是转义
+            if (c == '"') {
+                int end = skipString(s, i, c, false);
+                token(WORD, s, i, end, KW_NONE);
+                i = end;
+                continue;
+            }
+            if (c == '`') {
+                int end = s.indexOf('`', i + 1);
+                end = end < 0 ? n : end + 1;
+                token(WORD, s, i, end, KW_NONE);
+                i = end;
+                continue;
+            }
+            if (isDigit(c) || (c == '.' && i + 1 < n && isDigit(s.charAt(i + 1)))) {
+                i = skipNumber(s, i);
+                literal(start, i);
+                continue;
+            }
+            // 一元正负号并入数字: = -1, (+1, , -1
+            if ((c == '-' || c == '+') && i + 1 < n && isDigit(s.charAt(i + 1))
+                    && (lastKind == NONE || lastKind == OPERATOR || lastKind == OPEN || lastKind == COMMA)) {
+                i = skipNumber(s, i + 1);
+                literal(start, i);
+                continue;
+            }
+            if (isWordChar(c)) {
+                int end = i + 1;
+                while (end < n && isWordChar(s.charAt(end))) {
+                    end++;
+                }
+                // 带前缀的字符串 N'..' X'..' B'..' _utf8'..', 以及 postgresql 中使用 \ 转义的 E'..'
+                if (end < n && s.charAt(end) == '\'' && isStringPrefix(s, i, end, d)) {
+                    i = skipString(s, end, '\'', d.isBackslashEscapes() || isEscapePrefix(s, i, end));
+                    literal(start, i);
+                    continue;
+                }
+                int keyword = keyword(s, i, end);
+                token(keyword == KW_BOOLEAN ? LITERAL : WORD, s, i, end, keyword);
+                i = end;
+                continue;
+            }
+            switch (c) {
+                case '?':
+                    token(LITERAL, s, i, i + 1, KW_PLACEHOLDER);
+                    i++;
+                    continue;
+                case '(':
+                    token(OPEN, s, i, i + 1, KW_NONE);
+                    i++;
+                    continue;
+                case ')':
+                    token(CLOSE, s, i, i + 1, KW_NONE);
+                    i++;
+                    continue;
+                case ',':
+                    token(COMMA, s, i, i + 1, KW_NONE);
+                    i++;
+                    continue;
+                case ';':
+                    token(SEMICOLON, s, i, i + 1, KW_NONE);
+                    i++;
+                    continue;
+                default:
+                    int end = operatorEnd(s, i, c);
+                    token(OPERATOR, s, i, end, operator(s, i, end, dialect.isLogicalPipes()));
+                    i = end;
+            }
+        }
+        // 末尾的 or 1
+        if (tautology == AFTER_OR_LITERAL) {
+            reasons |= SqlVerdict.TAUTOLOGY;
+        }
+        flushInList();
+    }
+
+    // 注释一直到 sql 末尾, 前面有语句时视为截断
+    private void truncated(String marker) {
+        if (lastKind != NONE) {
+            reasons |= SqlVerdict.COMMENT_TRUNCATION;
+            token(MARKER, marker, 0, marker.length(), KW_NONE);
+        }
+    }
+
+    private void literal(int start, int end) {
+        token(LITERAL, sql, start, end, KW_NONE);
+    }
+
+    private void token(int kind, String source, int start, int end, int keyword) {
+        if (source == sql) {
+            span(kind, start, end);
+        }
+        // 普通的标识符和运算符在没有检测状态时不影响检测结果
+        if (keyword != KW_NONE || kind == SEMICOLON || kind == MARKER || kind == LITERAL || detecting()) {
+            detect(kind, keyword);
+        }
+        normalize(kind, source, start, end, keyword);
+        lastKind = kind;
+    }
+
+    private boolean detecting() {
+        return tautology != 0 || afterUnion || afterSemicolon || afterTimeFunction || afterWaitfor;
+    }
+
+    private void detect(int kind, int keyword) {
+        // 分号之后还有语句
+        if (afterSemicolon && kind != SEMICOLON && kind != MARKER) {
+            reasons |= SqlVerdict.STACKED_QUERY;
+        }
+        if (kind == SEMICOLON) {
+            afterSemicolon = true;
+        }
+
+        // union [all | distinct] [(] select
+        if (afterUnion && keyword == KW_SELECT) {
+            reasons |= SqlVerdict.UNION_SELECT;
+        }
+        afterUnion = keyword == KW_UNION || (afterUnion && (kind == OPEN || keyword == KW_UNION_MODIFIER));
+
+        // sleep( benchmark( waitfor delay
+        if ((afterTimeFunction && kind == OPEN) || (afterWaitfor && keyword == KW_DELAY)) {
+            reasons |= SqlVerdict.TIME_BASED;
+        }
+        afterTimeFunction = keyword == KW_TIME_FUNCTION;
+        afterWaitfor = keyword == KW_WAITFOR;
+
+        // or 字面量 [比较符 字面量]
+        switch (tautology) {
+            case AFTER_OR:
+                if (kind == LITERAL && keyword != KW_PLACEHOLDER) {
+                    tautology = AFTER_OR_LITERAL;
+                } else if (kind != OPEN && keyword != KW_NOT) {
+                    tautology = 0;
+                }
+                break;
+            case AFTER_OR_LITERAL:
+                if (keyword == KW_COMPARISON) {
+                    tautology = AFTER_OR_COMPARISON;
+                } else {
+                    if (kind == CLOSE || kind == SEMICOLON || kind == MARKER
+                            || keyword == KW_OR || keyword == KW_AND || keyword == KW_CLAUSE || keyword == KW_UNION) {
+                        reasons |= SqlVerdict.TAUTOLOGY;
+                    }
+                    tautology = 0;
+                }
+                break;
+            case AFTER_OR_COMPARISON:
+                if (kind == LITERAL && keyword != KW_PLACEHOLDER) {
+                    reasons |= SqlVerdict.TAUTOLOGY;
+                }
+                tautology = 0;
+                break;
+            default:
+                break;
+        }
+        if (keyword == KW_OR) {
+            tautology = AFTER_OR;
+        }
+    }
+
+    // in 后面只有字面量的列表合并为 (?+), 其他 token 原样输出
+    private void normalize(int kind, String source, int start, int end, int keyword) {
+        if (inList >= IN_OPEN) {
+            if (kind == LITERAL && (inList == IN_OPEN || inList == IN_COMMA)) {
+                inList = IN_LITERAL;
+                inLiterals++;
+                return;
+            }
+            if (kind == COMMA && inList == IN_LITERAL) {
+                inList = IN_COMMA;
+                return;
+            }
+            if (kind == CLOSE && inList == IN_LITERAL) {
+                inList = 0;
+                emit(OPEN, "(", 0, 1, false);
+                emit(LITERAL, null, 0, 0, false);
+                append('+');
+                emit(CLOSE, ")", 0, 1, false);
+                return;
+            }
+            // 不是字面量列表, 例如 in (select ...), 补上已经跳过的部分
+            flushInList();
+        }
+        if (inList == IN_WORD && kind == OPEN) {
+            inList = IN_OPEN;
+            inLiterals = 0;
+            return;
+        }
+        inList = keyword == KW_IN ? IN_WORD : 0;
+        emit(kind, source, start, end, keyword == KW_DOT);
+        if (keyword == KW_PLACEHOLDER) {
+            hash = Fingerprints.update(hash, PLACEHOLDER_MARK);
+        }
+    }
+
+    private void flushInList() {
+        if (inList < IN_OPEN) {
+            return;
+        }
+        int state = inList;
+        inList = 0;
+        emit(OPEN, "(", 0, 1, false);
+        for (int i = 0; i < inLiterals; i++) {
+            if (i > 0) {
+                emit(COMMA, ",", 0, 1, false);
+            }
+            emit(LITERAL, null, 0, 0, false);
+        }
+        if (state == IN_COMMA) {
+            emit(COMMA, ",", 0, 1, false);
+        }
+    }
+
+    private void emit(int kind, String source, int start, int end, boolean dot) {
+        if (emittedKind != NONE && emittedKind != OPEN && kind != COMMA && kind != CLOSE
+                && !(kind == OPEN && emittedKind == WORD) && !dot && !emittedDot) {
+            append(' ');
+        }
+        if (kind == LITERAL) {
+            append('?');
+        } else {
+            // 热点循环, 使用局部变量
+            long h = hash;
+            int length = patternLength;
+            char[] out = pattern;
+            boolean word = kind == WORD;
+            for (int i = start; i < end; i++) {
+                char c = source.charAt(i);
+                if (word) {
+                    c = toLowerCase(c);
+                }
+                h = Fingerprints.update(h, c);
+                if (length < MAX_PATTERN_LENGTH) {
+                    out[length++] = c;
+                }
+            }
+            hash = h;
+            patternLength = length;
+        }
+        emittedKind = kind;
+        emittedDot = dot;
+    }
+
+    // 记录 token 在 sql 中的位置, 超过 MAX_TOKENS 之后不再记录
+    private void span(int kind, int start, int end) {
+        int count = spanCount;
+        if (count == spanStarts.length) {
+            if (count == MAX_TOKENS) {
+                spanOverflow = true;
+                return;
+            }
+            spanStarts = Arrays.copyOf(spanStarts, count * 2);
+            spanEnds = Arrays.copyOf(spanEnds, count * 2);
+            spanKinds = Arrays.copyOf(spanKinds, count * 2);
+        }
+        spanStarts[count] = start;
+        spanEnds[count] = end;
+        spanKinds[count] = kind;
+        spanCount = count + 1;
+    }
+
+    private void append(char c) {
+        hash = Fingerprints.update(hash, c);
+        if (patternLength < MAX_PATTERN_LENGTH) {
+            pattern[patternLength++] = c;
+        }
+    }
+
+    // backslash 为 false 时 \ 是普通字符
+    private static int skipString(String s, int start, char quote, boolean backslash) {
+        int n = s.length();
+        int i = start + 1;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '\\' && backslash) {
+                i += 2;
+            } else if (c == quote) {
+                // 连续两个引号是转义
+                if (i + 1 < n && s.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return n;
+    }
+
+    // 数字: 123 1.5 .5 1e-3 0x1f 0b101
+    private static int skipNumber(String s, int start) {
+        int n = s.length();
+        int i = start;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (isDigit(c) || c == '.' || isLetter(c)) {
+                i++;
+            } else if ((c == '+' || c == '-') && i > start && (s.charAt(i - 1) == 'e' || s.charAt(i - 1) == 'E')
+                    && !(s.length() > start + 1 && (s.charAt(start + 1) == 'x' || s.charAt(start + 1) == 'X'))) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    // 多字符运算符只可能以这些字符开头
+    private static int operatorEnd(String s, int start, char c) {
+        switch (c) {
+            case '<':
+            case '>':
+            case '!':
+            case '|':
+            case '&':
+            case ':':
+            case '-':
+                for (String operator : OPERATORS) {
+                    if (s.startsWith(operator, start)) {
+                        return start + operator.length();
+                    }
+                }
+                return start + 1;
+            default:
+                return start + 1;
+        }
+    }
+
+    // logicalPipes 为 false 时 || 是字符串拼接, && 不是运算符
+    private static int operator(String s, int start, int end, boolean logicalPipes) {
+        char first = s.charAt(start);
+        switch (end - start) {
+            case 1:
+                if (first == '=' || first == '<' || first == '>') {
+                    return KW_COMPARISON;
+                }
+                return first == '.' ? KW_DOT : KW_NONE;
+            case 2:
+                char second = s.charAt(start + 1);
+                if (second == '=' && (first == '<' || first == '>' || first == '!')) {
+                    return KW_COMPARISON;
+                }
+                if (first == '<' && second == '>') {
+                    return KW_COMPARISON;
+                }
+                if (first == '|' && second == '|') {
+                    return logicalPipes ? KW_OR : KW_NONE;
+                }
+                return first == '&' && second == '&' && logicalPipes ? KW_AND : KW_NONE;
+            default:
+                // <=>
+                return first == '<' && s.charAt(start + 1) == '=' && s.charAt(start + 2) == '>' ? KW_COMPARISON : KW_NONE;
+        }
+    }
+
+    // 不是关键字时返回 KW_NONE
+    private static int keyword(String s, int start, int end) {
+        int length = end - start;
+        if (length > MAX_KEYWORD_LENGTH) {
+            return KW_NONE;
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + toLowerCase(s.charAt(i));
+        }
+        int slot = h & (KEYWORD_TABLE_SIZE - 1);
+        while (KEYWORD_TABLE[slot] != null) {
+            String keyword = KEYWORD_TABLE[slot];
+            if (keyword.length() == length && s.regionMatches(true, start, keyword, 0, length)) {
+                return KEYWORD_TABLE_CODES[slot];
+            }
+            slot = (slot + 1) & (KEYWORD_TABLE_SIZE - 1);
+        }
+        return KW_NONE;
+    }
+
+    // N X B 或者 _charset, 标准 sql 中还有 E
+    private static boolean isStringPrefix(String s, int start, int end, SqlDialect dialect) {
+        if (end - start == 1) {
+            char c = Character.toLowerCase(s.charAt(start));
+            return c == 'n' || c == 'x' || c == 'b' || (c == 'e' && !dialect.isBackslashEscapes());
+        }
+        return s.charAt(start) == '_';
+    }
+
+    // E'..'
+    private static boolean isEscapePrefix(String s, int start, int end) {
+        return end - start == 1 && (s.charAt(start) == 'e' || s.charAt(start) == 'E');
+    }
+
+    private static char toLowerCase(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        return c < 0x80 ? c : Character.toLowerCase(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWordChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '_' || c == '$' || (c >= 0x80 && Character.isLetterOrDigit(c));
+    }
+}
@@ -0,0 +1,140 @@
+package com.jrasp.module.mysql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// sql 检测结果: 同一种 sql 结构(规范化之后的文本)共享一个对象, 分数和特征只由结构决定
+// 请求参数改变了 sql 结构时, 在共享对象的基础上为这一次调用单独创建一个对象, 不放入缓存
+public class SqlVerdict {
+
+    public final static int MAX_SCORE = 100;
+
+    // 达到这个分数才告警
+    public final static int ALERT_SCORE = 40;
+
+    // 恒真条件: or 1=1, or 'a'='a', or true
+    public final static int TAUTOLOGY = 1;
+
+    // 分号之后还有语句
+    public final static int STACKED_QUERY = 1 << 1;
+
+    // 注释截断语句(行注释或未闭合的块注释在末尾), 或者 mysql 可执行注释 /*! */
+    public final static int COMMENT_TRUNCATION = 1 << 2;
+
+    // union [all] select
+    public final static int UNION_SELECT = 1 << 3;
+
+    // sleep(, benchmark( 等时间盲注函数
+    public final static int TIME_BASED = 1 << 4;
+
+    // sql 中出现了请求参数的值, 并且这个值改变了 sql 的结构; 与请求有关, 不由结构决定
+    public final static int REQUEST_PARAMETER = 1 << 5;
+
+    private final static String[] REASON_NAMES = {
+            "tautology", "stackedQuery", "commentTruncation", "unionSelect", "timeBased", "requestParameter"
+    };
+
+    private final long fingerprint;
+
+    private final int reasons;
+
+    private final int score;
+
+    // 规范化之后的 sql
+    private final String pattern;
+
+    // 这种结构的 sql 告警的次数
+    private final AtomicLong alerts;
+
+    // 改变了 sql 结构的请求参数值, 没有时为 null
+    private final String parameter;
+
+    // 这种结构的查询返回行数的历史分布
+    private final RowBaseline rowBaseline;
+
+    public SqlVerdict(long fingerprint, int reasons, String pattern) {
+        this(fingerprint, reasons, pattern, null, new AtomicLong(), new RowBaseline());
+    }
+
+    private SqlVerdict(long fingerprint, int reasons, String pattern, String parameter, AtomicLong alerts, RowBaseline rowBaseline) {
+        this.fingerprint = fingerprint;
+        this.reasons = reasons;
+        this.score = score(reasons);
+        this.pattern = pattern;
+        this.parameter = parameter;
+        this.alerts = alerts;
+        this.rowBaseline = rowBaseline;
+    }
+
+    // 加上请求参数的特征, 告警次数和行数分布仍然计入这种结构
+    public SqlVerdict withParameter(String parameter) {
+        return new SqlVerdict(fingerprint, reasons | REQUEST_PARAMETER, pattern, parameter, alerts, rowBaseline);
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public boolean has(int reason) {
+        return (reasons & reason) != 0;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    public RowBaseline getRowBaseline() {
+        return rowBaseline;
+    }
+
+    public long alert() {
+        return alerts.incrementAndGet();
+    }
+
+    public long getAlerts() {
+        return alerts.get();
+    }
+
+    public List<String> getReasons() {
+        List<String> result = new ArrayList<String>(REASON_NAMES.length);
+        for (int i = 0; i < REASON_NAMES.length; i++) {
+            if ((reasons & (1 << i)) != 0) {
+                result.add(REASON_NAMES[i]);
+            }
+        }
+        return result;
+    }
+
+    // union select 在正常业务中也会出现, 单独出现时不告警
+    private static int score(int reasons) {
+        int score = 0;
+        if ((reasons & TAUTOLOGY) != 0) {
+            score += 60;
+        }
+        if ((reasons & STACKED_QUERY) != 0) {
+            score += 50;
+        }
+        if ((reasons & COMMENT_TRUNCATION) != 0) {
+            score += 40;
+        }
+        if ((reasons & UNION_SELECT) != 0) {
+            score += 20;
+        }
+        if ((reasons & TIME_BASED) != 0) {
+            score += 50;
+        }
+        if ((reasons & REQUEST_PARAMETER) != 0) {
+            score += 60;
+        }
+        return Math.min(score, MAX_SCORE);
+    }
+}
@@ -0,0 +1,86 @@
+package com.jrasp.module.mysql;
+
+import com.jrasp.module.common.ClockTable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// sql 检测结果缓存, 两级, 都是 common 中组相联的 CLOCK 表; 查询无锁, 写入使用 CAS
+//   1. sql 文本 -> 检测结果: 只缓存预编译语句的 sql 模板, 重复执行时只查一次 hash 表
+//   2. 结构指纹 -> 检测结果: 拼接字面量的 sql 每次都不同, 规范化之后按结构共享同一个检测结果
+// 内存占用与 sql 结构的数量有关, 与执行次数和字面量的取值无关
+public class SqlVerdictCache {
+
+    public final static int DEFAULT_SQL_CAPACITY = 1024;
+
+    public final static int DEFAULT_SHAPE_CAPACITY = 4096;
+
+    // 过长的 sql 文本不缓存
+    private final static int MAX_SQL_LENGTH = 4096;
+
+    private final ClockTable<String, SqlVerdict> sqlTable;
+
+    // 结构指纹是 64 位 hash, 只比较指纹
+    private final ClockTable<String, SqlVerdict> shapeTable;
+
+    public SqlVerdictCache() {
+        this(DEFAULT_SQL_CAPACITY, DEFAULT_SHAPE_CAPACITY);
+    }
+
+    public SqlVerdictCache(int sqlCapacity, int shapeCapacity) {
+        this.sqlTable = new ClockTable<String, SqlVerdict>(sqlCapacity);
+        this.shapeTable = new ClockTable<String, SqlVerdict>(shapeCapacity);
+    }
+
+    // 按 sql 文本和方言查询, 没有时返回 null
+    public SqlVerdict get(String sql, SqlDialect dialect) {
+        return sqlTable.get(sqlKey(sql, dialect), sql);
+    }
+
+    public void put(String sql, SqlDialect dialect, SqlVerdict verdict) {
+        if (sql.length() <= MAX_SQL_LENGTH) {
+            sqlTable.put(sqlKey(sql, dialect), sql, verdict);
+        }
+    }
+
+    private static long sqlKey(String sql, SqlDialect dialect) {
+        return ((long) sql.hashCode() << 32) | dialect.ordinal();
+    }
+
+    // 按结构指纹获取共享的检测结果, 没有时用词法分析的结果创建
+    public SqlVerdict resolve(SqlLexer lexer) {
+        long fingerprint = lexer.getFingerprint();
+        SqlVerdict verdict = shapeTable.get(fingerprint, null);
+        if (verdict == null) {
+            verdict = new SqlVerdict(fingerprint, lexer.getReasons(), lexer.getPattern());
+            shapeTable.put(fingerprint, null, verdict);
+        }
+        return verdict;
+    }
+
+    // 告警过的 sql 结构
+    public List<Map<String, Object>> alerted() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (SqlVerdict verdict : shapeTable.values()) {
+            if (verdict.getAlerts() > 0) {
+                Map<String, Object> item = new LinkedHashMap<String, Object>(8);
+                item.put("fingerprint", Long.toHexString(verdict.getFingerprint()));
+                item.put("pattern", verdict.getPattern());
+                item.put("score", verdict.getScore());
+                item.put("reasons", verdict.getReasons());
+                item.put("alerts", verdict.getAlerts());
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<String, Object>(4);
+        status.put("sql", sqlTable.status());
+        status.put("shape", shapeTable.status());
+        return status;
+    }
+}
@@ -0,0 +1,39 @@
+package com.jrasp.module.mysql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SqlBatchTest {
+
+    @Test
+    public void batchIsSharedAcrossThreads() throws Exception {
+        final Object statement = new Object();
+        Thread adder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SqlBatch.of(statement).add("insert into t values (1)");
+            }
+        });
+        adder.start();
+        adder.join();
+        SqlBatch batch = SqlBatch.remove(statement);
+        assertEquals(1, batch.size());
+        assertEquals(Arrays.asList("insert into t values (1)"), batch.drain());
+        assertNull(SqlBatch.remove(statement));
+    }
+
+    @Test
+    public void batchIsKeyedByIdentity() {
+        Object a = new Object();
+        Object b = new Object();
+        SqlBatch batch = SqlBatch.of(a);
+        assertSame(batch, SqlBatch.of(a));
+        assertNull(SqlBatch.remove(b));
+        assertSame(batch, SqlBatch.remove(a));
+    }
+}
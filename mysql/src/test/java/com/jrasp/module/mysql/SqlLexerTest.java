@@ -0,0 +1,105 @@
+package com.jrasp.module.mysql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SqlLexerTest {
+
+    private static int reasons(String sql, SqlDialect dialect) {
+        return SqlLexer.analyze(sql, dialect).getReasons();
+    }
+
+    @Test
+    public void normalizesLiteralsAndInLists() {
+        assertEquals("select * from t where id in(?+) and name = ?",
+                SqlLexer.analyze("SELECT * FROM t WHERE id IN (1, 2, 3) AND name = 'x'", SqlDialect.MYSQL).getPattern());
+        assertEquals("select a.b from t where x = ? and y = ?",
+                SqlLexer.analyze("select  a.b from T where x = -1 /* c */ and y = ?", SqlDialect.MYSQL).getPattern());
+    }
+
+    @Test
+    public void literalsNormalizeToSameFingerprint() {
+        long a = SqlLexer.analyze("select * from t where id = 1 and name = 'a'", SqlDialect.MYSQL).getFingerprint();
+        long b = SqlLexer.analyze("select * from t where id = 22 and name = 'bb'", SqlDialect.MYSQL).getFingerprint();
+        long c = SqlLexer.analyze("select * from t where id = 1 and code = 'a'", SqlDialect.MYSQL).getFingerprint();
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+    }
+
+    @Test
+    public void literalTautology() {
+        assertEquals(SqlVerdict.TAUTOLOGY, reasons("select * from t where id = 1 or 1=1", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.TAUTOLOGY, reasons("select * from t where name = '' or '1'='1'", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.TAUTOLOGY, reasons("select * from t where id = 1 or true", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.TAUTOLOGY, reasons("select * from t where id = 1 || 1=1", SqlDialect.MYSQL));
+        assertEquals(0, reasons("select * from t where id = 1 or name = 'a'", SqlDialect.MYSQL));
+    }
+
+    @Test
+    public void placeholderIsNotTautology() {
+        // 可选过滤条件的写法
+        assertEquals(0, reasons("select * from t where (status = ? or ? = -1)", SqlDialect.MYSQL));
+        assertEquals(0, reasons("select * from t where a = ? or ? = ?", SqlDialect.MYSQL));
+        assertEquals(0, reasons("select * from t where a = ? or ?", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.TAUTOLOGY, reasons("select * from t where id = ? or 1=1", SqlDialect.MYSQL));
+        assertEquals(0, reasons("select * from t where (status = ? or ? = -1)", SqlDialect.STANDARD));
+    }
+
+    @Test
+    public void pipesAreOrOnlyInMysql() {
+        assertEquals(SqlVerdict.TAUTOLOGY, reasons("select * from t where id = 1 || 1=1", SqlDialect.MYSQL));
+        assertEquals(0, reasons("select * from t where id = 1 || 1=1", SqlDialect.STANDARD));
+        assertEquals(0, reasons("select * from t where name like '%' || ? || '%'", SqlDialect.STANDARD));
+        assertEquals(0, reasons("select first_name || ' ' || last_name from t", SqlDialect.STANDARD));
+        assertEquals(0, reasons("select * from t where a = 1 && b = 2", SqlDialect.STANDARD));
+    }
+
+    @Test
+    public void backslashEscapesOnlyInMysql() {
+        String sql = "select * from t where a = '\\' or 1=1 -- '";
+        assertEquals(0, reasons(sql, SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.TAUTOLOGY | SqlVerdict.COMMENT_TRUNCATION, reasons(sql, SqlDialect.STANDARD));
+        // postgresql 的 E'..' 使用 \ 转义
+        assertEquals(0, reasons("select * from t where a = E'\\' or 1=1 -- '", SqlDialect.STANDARD));
+        assertEquals(0, reasons("select * from t where a = 'it''s' or b = 'x'", SqlDialect.STANDARD));
+    }
+
+    @Test
+    public void standardQuotesAndComments() {
+        // 标准 sql 中 "..." 是标识符, 不是字面量
+        assertEquals(0, reasons("select * from t where \"id\" = 1 or \"a\" = \"b\"", SqlDialect.STANDARD));
+        assertEquals(SqlVerdict.TAUTOLOGY, reasons("select * from t where id = 1 or \"1\" = \"1\"", SqlDialect.MYSQL));
+        // # 只在 mysql 中是注释, /*! */ 只在 mysql 中执行
+        assertEquals(SqlVerdict.COMMENT_TRUNCATION, reasons("select * from t where name = 'a' #", SqlDialect.MYSQL));
+        assertEquals(0, reasons("select * from t where a = b # c", SqlDialect.STANDARD));
+        assertEquals(0, reasons("select * from t where id = 1 /*! or 1=1 */", SqlDialect.STANDARD));
+    }
+
+    @Test
+    public void placeholderAndLiteralHaveDifferentFingerprints() {
+        SqlLexer lexer = SqlLexer.analyze("select * from t where a = ? or ? = ?", SqlDialect.MYSQL);
+        String pattern = lexer.getPattern();
+        long fingerprint = lexer.getFingerprint();
+        lexer = SqlLexer.analyze("select * from t where a = 1 or 1 = 1", SqlDialect.MYSQL);
+        assertEquals(pattern, lexer.getPattern());
+        assertNotEquals(fingerprint, lexer.getFingerprint());
+    }
+
+    @Test
+    public void dialectChangesFingerprint() {
+        long mysql = SqlLexer.analyze("select * from t where id = 1", SqlDialect.MYSQL).getFingerprint();
+        long standard = SqlLexer.analyze("select * from t where id = 1", SqlDialect.STANDARD).getFingerprint();
+        assertNotEquals(mysql, standard);
+    }
+
+    @Test
+    public void injectionFeatures() {
+        assertEquals(SqlVerdict.STACKED_QUERY, reasons("select * from t where id = 1; drop table t", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.UNION_SELECT, reasons("select a from t where id = 1 union all select password from u", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.TIME_BASED, reasons("select * from t where id = 1 and sleep(5)", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.COMMENT_TRUNCATION, reasons("select * from t where name = 'a' -- ", SqlDialect.MYSQL));
+        assertEquals(SqlVerdict.COMMENT_TRUNCATION, reasons("select * from t where id = 1 /*!50000 and 1 */", SqlDialect.MYSQL));
+    }
+}
@@ -0,0 +1,397 @@
+package com.jrasp.module.rce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// 命令执行白名单: 规则编译为按参数(argv)逐级匹配的前缀树, 编译后不可变, 更新时整体替换
+// 规则按空白分隔为参数, 第一个参数为可执行文件:
+//   /usr/bin/git status          参数完全一致
+//   sh -c "ls -la"               引号中的内容为一个参数, 不做通配和正则解释, 双引号中可以用 \" 和 \\ 转义
+//   prefix:/usr/bin/git log      以这些参数开头, 后面可以有任意参数
+//   /usr/bin/convert * **        * 匹配任意一个参数, ** 只能在最后, 匹配剩余的任意个参数
+//   /usr/bin/ffmpeg -i *.mp4 **  参数中的 * 和 ? 为通配符
+//   /usr/bin/git re:log|show **  re: 开头的参数为正则表达式, 匹配整个参数
+// 匹配时每个参数在每层节点上只做一次查表, 与规则数量无关(通配和正则参数除外)
+// 兼容旧版白名单: 非 prefix 规则同时按原文与空格连接的整个命令行比较, 例如 sh -c ls -la 仍然匹配 [sh, -c, "ls -la"]
+public final class CommandAllowlist {
+
+    public final static CommandAllowlist EMPTY = new CommandAllowlist(new Node(), new TokenTable<Boolean>(0),
+            Collections.<String>emptyList());
+
+    private final static String PREFIX_RULE = "prefix:";
+
+    private final static String REGEX_TOKEN = "re:";
+
+    private final static String ANY_TOKEN = "*";
+
+    private final static String ANY_REST_TOKEN = "**";
+
+    private final Node root;
+
+    // 旧版规则: 整个命令行完全一致
+    private final TokenTable<Boolean> legacy;
+
+    private final List<String> rules;
+
+    private CommandAllowlist(Node root, TokenTable<Boolean> legacy, List<String> rules) {
+        this.root = root;
+        this.legacy = legacy;
+        this.rules = rules;
+    }
+
+    // 规则错误时抛出 IllegalArgumentException
+    public static CommandAllowlist compile(String[] rules) {
+        if (rules == null || rules.length == 0) {
+            return EMPTY;
+        }
+        Builder root = new Builder();
+        List<String> compiled = new ArrayList<String>(rules.length);
+        List<String> legacyRules = new ArrayList<String>(rules.length);
+        for (String rule : rules) {
+            if (rule == null || rule.trim().length() == 0) {
+                continue;
+            }
+            List<Token> tokens;
+            boolean prefix = rule.startsWith(PREFIX_RULE);
+            if (prefix) {
+                tokens = tokenize(rule.substring(PREFIX_RULE.length()), rule);
+            } else {
+                tokens = tokenize(rule, rule);
+                legacyRules.add(rule);
+            }
+            if (tokens.isEmpty() || tokens.get(0).text.length() == 0) {
+                throw new IllegalArgumentException("empty command rule: " + rule);
+            }
+            Builder node = root;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (!token.quoted && ANY_REST_TOKEN.equals(token.text)) {
+                    if (i != tokens.size() - 1) {
+                        throw new IllegalArgumentException("'**' must be the last token: " + rule);
+                    }
+                    prefix = true;
+                    break;
+                }
+                node = node.child(token, rule);
+            }
+            if (prefix) {
+                node.acceptRest = true;
+            } else {
+                node.terminal = true;
+            }
+            compiled.add(rule);
+        }
+        TokenTable<Boolean> legacy = new TokenTable<Boolean>(legacyRules.size());
+        for (String rule : legacyRules) {
+            if (legacy.get(rule, 0, rule.length()) == null) {
+                legacy.put(rule, Boolean.TRUE);
+            }
+        }
+        return new CommandAllowlist(root.build(), legacy, Collections.unmodifiableList(compiled));
+    }
+
+    // 按空白切分规则, 单引号和双引号中的空白不切分
+    private static List<Token> tokenize(String text, String rule) {
+        List<Token> tokens = new ArrayList<Token>();
+        StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        boolean quoted = false;
+        char quote = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                } else if (quote == '"' && ch == '\\' && i + 1 < text.length()
+                        && (text.charAt(i + 1) == '"' || text.charAt(i + 1) == '\\')) {
+                    token.append(text.charAt(++i));
+                } else {
+                    token.append(ch);
+                }
+            } else if (Character.isWhitespace(ch)) {
+                if (inToken) {
+                    tokens.add(new Token(token.toString(), quoted));
+                    token.setLength(0);
+                    inToken = false;
+                    quoted = false;
+                }
+            } else if (ch == '"' || ch == '\'') {
+                quote = ch;
+                inToken = true;
+                quoted = true;
+            } else {
+                token.append(ch);
+                inToken = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("unclosed quote in rule: " + rule);
+        }
+        if (inToken) {
+            tokens.add(new Token(token.toString(), quoted));
+        }
+        return tokens;
+    }
+
+    public boolean matches(CommandLine commandLine) {
+        return commandLine.argc() > 0
+                && (root.matches(commandLine, 0) || legacy.get(commandLine, 0, commandLine.length()) != null);
+    }
+
+    public List<String> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    // 规则中的一个参数, 带引号的参数按字面匹配
+    private static class Token {
+
+        final String text;
+
+        final boolean quoted;
+
+        Token(String text, boolean quoted) {
+            this.text = text;
+            this.quoted = quoted;
+        }
+    }
+
+    // 编译期节点, 只在 compile 中使用
+    private static class Builder {
+
+        final Map<String, Builder> exact = new HashMap<String, Builder>();
+
+        final Map<String, Builder> patterns = new HashMap<String, Builder>();
+
+        final Map<String, TokenPattern> compiledPatterns = new HashMap<String, TokenPattern>();
+
+        boolean terminal;
+
+        boolean acceptRest;
+
+        Builder child(Token token, String rule) {
+            String text = token.text;
+            boolean literal = token.quoted
+                    || (!text.startsWith(REGEX_TOKEN) && text.indexOf('*') < 0 && text.indexOf('?') < 0);
+            Map<String, Builder> children = literal ? exact : patterns;
+            Builder child = children.get(text);
+            if (child == null) {
+                if (!literal) {
+                    compiledPatterns.put(text, TokenPattern.compile(text, rule));
+                }
+                child = new Builder();
+                children.put(text, child);
+            }
+            return child;
+        }
+
+        Node build() {
+            Node node = new Node();
+            node.terminal = terminal;
+            node.acceptRest = acceptRest;
+            node.exact = new TokenTable<Node>(exact.size());
+            for (Map.Entry<String, Builder> entry : exact.entrySet()) {
+                node.exact.put(entry.getKey(), entry.getValue().build());
+            }
+            node.patterns = new TokenPattern[patterns.size()];
+            node.patternChildren = new Node[patterns.size()];
+            int i = 0;
+            for (Map.Entry<String, Builder> entry : patterns.entrySet()) {
+                node.patterns[i] = compiledPatterns.get(entry.getKey());
+                node.patternChildren[i] = entry.getValue().build();
+                i++;
+            }
+            return node;
+        }
+    }
+
+    private static class Node {
+
+        TokenTable<Node> exact = new TokenTable<Node>(0);
+
+        TokenPattern[] patterns = new TokenPattern[0];
+
+        Node[] patternChildren = new Node[0];
+
+        // 有规则在这个节点结束, 参数必须完全匹配
+        boolean terminal;
+
+        // 有前缀规则在这个节点结束, 后面可以有任意参数
+        boolean acceptRest;
+
+        boolean matches(CommandLine commandLine, int index) {
+            if (acceptRest) {
+                return true;
+            }
+            if (index == commandLine.argc()) {
+                return terminal;
+            }
+            Node child = exact.get(commandLine, commandLine.argStart(index), commandLine.argEnd(index));
+            if (child != null && child.matches(commandLine, index + 1)) {
+                return true;
+            }
+            for (int i = 0; i < patterns.length; i++) {
+                if (patterns[i].matches(commandLine, index) && patternChildren[i].matches(commandLine, index + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // 以参数为 key 的开放寻址表, 查找时直接比较命令行缓冲区中的字符, 不创建字符串
+    private static class TokenTable<V> {
+
+        private final String[] keys;
+
+        private final Object[] values;
+
+        private final int mask;
+
+        TokenTable(int expectedSize) {
+            int size = 2;
+            while (size < expectedSize * 2) {
+                size <<= 1;
+            }
+            this.keys = new String[size];
+            this.values = new Object[size];
+            this.mask = size - 1;
+        }
+
+        void put(String key, V value) {
+            int index = spread(key.hashCode()) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(CharSequence chars, int start, int end) {
+            // 与 String.hashCode 的计算方式一致
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + chars.charAt(i);
+            }
+            int index = spread(h) & mask;
+            String key;
+            while ((key = keys[index]) != null) {
+                if (regionEquals(chars, start, end, key)) {
+                    return (V) values[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        private static boolean regionEquals(CharSequence chars, int start, int end, String key) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (chars.charAt(start + i) != key.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // 单个参数的通配或正则匹配
+    private static abstract class TokenPattern {
+
+        static TokenPattern compile(String token, String rule) {
+            if (token.startsWith(REGEX_TOKEN)) {
+                try {
+                    return new RegexPattern(Pattern.compile(token.substring(REGEX_TOKEN.length())));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("invalid regex in rule: " + rule + ", " + e.getDescription());
+                }
+            }
+            if (ANY_TOKEN.equals(token)) {
+                return AnyPattern.INSTANCE;
+            }
+            return new GlobPattern(token);
+        }
+
+        abstract boolean matches(CommandLine commandLine, int arg);
+    }
+
+    private static class AnyPattern extends TokenPattern {
+
+        final static AnyPattern INSTANCE = new AnyPattern();
+
+        @Override
+        boolean matches(CommandLine commandLine, int arg) {
+            return true;
+        }
+    }
+
+    private static class RegexPattern extends TokenPattern {
+
+        private final Pattern pattern;
+
+        RegexPattern(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean matches(CommandLine commandLine, int arg) {
+            Matcher matcher = pattern.matcher(commandLine);
+            matcher.region(commandLine.argStart(arg), commandLine.argEnd(arg));
+            return matcher.matches();
+        }
+    }
+
+    // * 匹配任意个字符, ? 匹配一个字符
+    private static class GlobPattern extends TokenPattern {
+
+        private final String glob;
+
+        GlobPattern(String glob) {
+            this.glob = glob;
+        }
+
+        @Override
+        boolean matches(CommandLine commandLine, int arg) {
+            int start = commandLine.argStart(arg);
+            int end = commandLine.argEnd(arg);
+            int g = 0;
+            int c = start;
+            int starG = -1;
+            int starC = -1;
+            while (c < end) {
+                if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == commandLine.charAt(c))) {
+                    g++;
+                    c++;
+                } else if (g < glob.length() && glob.charAt(g) == '*') {
+                    starG = g++;
+                    starC = c;
+                } else if (starG >= 0) {
+                    g = starG + 1;
+                    c = ++starC;
+                } else {
+                    return false;
+                }
+            }
+            while (g < glob.length() && glob.charAt(g) == '*') {
+                g++;
+            }
+            return g == glob.length();
+        }
+    }
+}
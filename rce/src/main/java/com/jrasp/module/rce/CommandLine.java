@@ -0,0 +1,229 @@
+package com.jrasp.module.rce;
+
+import com.jrasp.module.common.Fingerprints;
+
+import java.nio.charset.Charset;
+
+// 命令行视图: 命令和参数以空格连接保存在可复用的字符缓冲区中, 同时记录每个参数(argv)的起止位置
+// 每个线程复用一个实例, 只能在当前 hook 调用中使用, 需要保留时使用 toString()
+public class CommandLine implements CharSequence {
+
+    private final static ThreadLocal<CommandLine> LOCAL = new ThreadLocal<CommandLine>() {
+        @Override
+        protected CommandLine initialValue() {
+            return new CommandLine();
+        }
+    };
+
+    private final static int INITIAL_CHARS = 256;
+
+    // 超过这个大小的缓冲区不再复用, 避免线程长期持有大数组
+    private final static int MAX_RETAINED_CHARS = 64 * 1024;
+
+    private final static int INITIAL_ARGS = 16;
+
+    private char[] chars = new char[INITIAL_CHARS];
+
+    private int length;
+
+    // 第 i 个参数的起止位置: offsets[2i], offsets[2i+1]
+    private int[] offsets = new int[INITIAL_ARGS * 2];
+
+    private int argc;
+
+    private String string;
+
+    // 当前线程的命令行视图, 已清空
+    public static CommandLine current() {
+        CommandLine commandLine = LOCAL.get();
+        commandLine.reset();
+        return commandLine;
+    }
+
+    // jdk9+: ProcessImpl.start(String[] cmdarray, ...)
+    public static CommandLine decode(String[] cmdArray) {
+        CommandLine commandLine = current();
+        if (cmdArray != null) {
+            for (String arg : cmdArray) {
+                commandLine.append(arg);
+            }
+        }
+        return commandLine;
+    }
+
+    // jdk6~8: UNIXProcess(byte[] prog, byte[] argBlock, ...), prog 以 \0 结尾, argBlock 中每个参数以 \0 结尾
+    public static CommandLine decode(byte[] prog, byte[] argBlock) {
+        CommandLine commandLine = current();
+        if (prog != null && prog.length > 0) {
+            commandLine.append(prog, 0, prog.length - 1);
+        }
+        if (argBlock != null) {
+            int position = 0;
+            for (int i = 0; i < argBlock.length; i++) {
+                if (argBlock[i] == 0) {
+                    commandLine.append(argBlock, position, i);
+                    position = i + 1;
+                }
+            }
+        }
+        return commandLine;
+    }
+
+    void reset() {
+        if (chars.length > MAX_RETAINED_CHARS) {
+            chars = new char[INITIAL_CHARS];
+        }
+        length = 0;
+        argc = 0;
+        string = null;
+    }
+
+    void append(String arg) {
+        int start = beginArg(arg == null ? 0 : arg.length());
+        if (arg != null) {
+            arg.getChars(0, arg.length(), chars, start);
+            length += arg.length();
+        }
+        endArg(start);
+    }
+
+    void append(byte[] bytes, int from, int to) {
+        int start = beginArg(to - from);
+        // ascii 快速路径: 逐字节转换, 遇到非 ascii 字节时按平台编码解码
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                length = start;
+                appendDecoded(new String(bytes, from, to - from, Charset.defaultCharset()));
+                break;
+            }
+            chars[length++] = (char) b;
+        }
+        endArg(start);
+    }
+
+    private void appendDecoded(String arg) {
+        ensureCapacity(length + arg.length());
+        arg.getChars(0, arg.length(), chars, length);
+        length += arg.length();
+    }
+
+    // 写入参数分隔符并预留空间, 返回参数的起始位置
+    private int beginArg(int argLength) {
+        ensureCapacity(length + argLength + 1);
+        if (argc > 0) {
+            chars[length++] = ' ';
+        }
+        return length;
+    }
+
+    private void endArg(int start) {
+        if (argc * 2 + 2 > offsets.length) {
+            int[] newOffsets = new int[offsets.length * 2];
+            System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+            offsets = newOffsets;
+        }
+        offsets[argc * 2] = start;
+        offsets[argc * 2 + 1] = length;
+        argc++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            char[] newChars = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, newChars, 0, length);
+            chars = newChars;
+        }
+    }
+
+    // 参数个数, 包含命令本身
+    public int argc() {
+        return argc;
+    }
+
+    public int argStart(int index) {
+        checkArg(index);
+        return offsets[index * 2];
+    }
+
+    public int argEnd(int index) {
+        checkArg(index);
+        return offsets[index * 2 + 1];
+    }
+
+    public int argLength(int index) {
+        return argEnd(index) - argStart(index);
+    }
+
+    public String arg(int index) {
+        int start = argStart(index);
+        return new String(chars, start, argEnd(index) - start);
+    }
+
+    // 比较第 index 个参数, 不创建字符串
+    public boolean argEquals(int index, String value) {
+        int start = argStart(index);
+        int argLength = argEnd(index) - start;
+        if (value == null || value.length() != argLength) {
+            return false;
+        }
+        for (int i = 0; i < argLength; i++) {
+            if (chars[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 命令行指纹, 包含参数个数和每个参数的长度: [echo, a, b] 与 [echo, "a b"] 的指纹不同
+    public long fingerprint() {
+        long h = Fingerprints.update(Fingerprints.SEED, argc);
+        for (int i = 0; i < argc; i++) {
+            int start = offsets[i * 2];
+            int end = offsets[i * 2 + 1];
+            h = Fingerprints.update(h, end - start);
+            for (int c = start; c < end; c++) {
+                h = Fingerprints.update(h, chars[c]);
+            }
+        }
+        return Fingerprints.mix(h);
+    }
+
+    private void checkArg(int index) {
+        if (index < 0 || index >= argc) {
+            throw new IndexOutOfBoundsException("index: " + index + ", argc: " + argc);
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        return new String(chars, start, end - start);
+    }
+
+    // 命令和参数以空格连接, 与原来的 getCommandAndArgs 结果一致
+    @Override
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            s = new String(chars, 0, length);
+            string = s;
+        }
+        return s;
+    }
+}
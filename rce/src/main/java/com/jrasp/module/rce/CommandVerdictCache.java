@@ -0,0 +1,101 @@
+package com.jrasp.module.rce;
+
+import com.jrasp.module.common.StripedCounter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 命令判定缓存: key 为 (命令, 调用栈) 的指纹, 直接映射的定长表, 无锁
+// 每个槽位一个 long: 高 44 位为 key, 中间 18 位为配置代数, 低 2 位为判定结果, 读写不会出现撕裂
+// 白名单或阻断配置变化时递增代数, 旧代数的记录全部失效
+public class CommandVerdictCache {
+
+    public final static int DEFAULT_CAPACITY = 4096;
+
+    public final static int UNKNOWN = 0;
+
+    // 命中白名单
+    public final static int ALLOWED = 1;
+
+    // 未命中白名单
+    public final static int DENIED = 2;
+
+    private final static int VERDICT_BITS = 2;
+
+    private final static int GENERATION_BITS = 18;
+
+    private final static long VERDICT_MASK = (1L << VERDICT_BITS) - 1;
+
+    private final static long GENERATION_MASK = (1L << GENERATION_BITS) - 1;
+
+    private final static long KEY_MASK = -1L << (VERDICT_BITS + GENERATION_BITS);
+
+    private final AtomicLongArray table;
+
+    private final int mask;
+
+    private volatile long generation = 1;
+
+    private final StripedCounter hits = new StripedCounter();
+
+    private final StripedCounter misses = new StripedCounter();
+
+    public CommandVerdictCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandVerdictCache(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.table = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    public int get(long key) {
+        long entry = table.get(index(key));
+        if ((entry & KEY_MASK) == (key & KEY_MASK) && ((entry >>> VERDICT_BITS) & GENERATION_MASK) == generation) {
+            int verdict = (int) (entry & VERDICT_MASK);
+            if (verdict != UNKNOWN) {
+                hits.increment();
+                return verdict;
+            }
+        }
+        misses.increment();
+        return UNKNOWN;
+    }
+
+    // 判定之前读取, 与判定结果一起传给 put
+    public long getGeneration() {
+        return generation;
+    }
+
+    // generation 为判定之前读取的值, 判定期间配置发生了变化时不写入; 写入之后才变化的记录带着旧代数, 查询时不会命中
+    public void put(long key, int verdict, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        long entry = (key & KEY_MASK) | (generation << VERDICT_BITS) | (verdict & VERDICT_MASK);
+        table.lazySet(index(key), entry);
+    }
+
+    // 配置变化时调用, 所有已缓存的判定失效
+    public synchronized void invalidate() {
+        long next = (generation + 1) & GENERATION_MASK;
+        generation = next == 0 ? 1 : next;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<String, Object>(4);
+        status.put("capacity", table.length());
+        status.put("hits", hits.sum());
+        status.put("misses", misses.sum());
+        return status;
+    }
+
+    private int index(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
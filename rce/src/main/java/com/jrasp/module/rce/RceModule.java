@@ -10,19 +10,30 @@ import com.jrasp.api.listener.ext.EventWatchBuilder;
 import com.jrasp.api.log.Log;
 import com.jrasp.api.model.RestResultUtils;
 import com.jrasp.api.resource.ModuleEventWatcher;
+import com.jrasp.module.common.AlertEvent;
+import com.jrasp.module.common.AlertPipeline;
+import com.jrasp.module.common.AlertRateLimiter;
+import com.jrasp.module.common.CapturedStack;
 import com.jrasp.module.common.ClassLoaderUtil;
+import com.jrasp.module.common.Fingerprints;
+import com.jrasp.module.common.HookMetrics;
+import com.jrasp.module.common.MetricsRegistry;
+import com.jrasp.module.common.ModuleCommands;
+import com.jrasp.module.common.RequestContext;
+import com.jrasp.module.common.StackInterner;
 import com.jrasp.module.common.StackTrace;
-import com.jrasp.module.common.StringUtils;
+import com.jrasp.module.common.ThreadPolicy;
 import org.kohsuke.MetaInfServices;
 
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static com.jrasp.module.common.JavaVersionUtils.isGreaterThanJava8;
 
 @MetaInfServices(Module.class)
 @Information(id = "rce", version = "1.0.0", isActiveOnLoad = true, author = "jrasp", middlewareVersion = "[6,11]")
-public class RceModule implements Module, LoadCompleted {
+public class RceModule extends ModuleLifecycleAdapter implements Module {
 
     @Resource
     private Log logger;
@@ -36,12 +47,52 @@ public class RceModule implements Module, LoadCompleted {
     @Resource
     private ThreadLocal<HashMap<String, Object>> requestInfoThreadLocal;
 
+    // 相同的调用栈只输出一次完整的栈
+    private final StackInterner stackInterner = new StackInterner();
+
+    // 告警在后台线程中序列化和输出
+    private final AlertPipeline<AlertEvent> alertPipeline = new AlertPipeline<AlertEvent>("rce",
+            new AlertPipeline.Handler<AlertEvent>() {
+                @Override
+                public void handle(AlertEvent event) {
+                    logger.warn(jsonObject.toJSONString(event.toMap()));
+                }
+            });
+
+    // 告警限流: 相同 hook 点、相同内容的告警按令牌桶输出, 不影响阻断
+    private final AlertRateLimiter alertRateLimiter = new AlertRateLimiter("rce");
+
+    // 请求之外的线程的检测策略
+    private volatile ThreadPolicy backgroundPolicy = ThreadPolicy.LIGHT;
+
+    // 各 hook 点的耗时分布和命中、告警、阻断次数
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
     private volatile boolean enableBlock = true;
 
-    private volatile HashSet<String> cmdWhiteList = new HashSet<String>(16);
+    // 阻断的最低分数(命令行词法分析), 0 表示阻断所有不在白名单中的命令
+    private volatile int blockScore = 0;
+
+    // (命令, 调用栈) 的白名单判定缓存, 白名单或阻断配置变化时失效
+    private final CommandVerdictCache verdictCache = new CommandVerdictCache();
+
+    // 编译后的白名单, 更新时整体替换
+    private volatile CommandAllowlist cmdWhiteList = CommandAllowlist.EMPTY;
 
     @Override
     public void loadCompleted() {
+        alertPipeline.setPeriodicTask(new Runnable() {
+            @Override
+            public void run() {
+                // 输出被限流的告警汇总
+                for (Map<String, Object> summary : alertRateLimiter.drainSuppressed()) {
+                    logger.warn(jsonObject.toJSONString(summary));
+                }
+            }
+        }, AlertRateLimiter.SUMMARY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        // 丢弃的告警中的完整栈没有输出, 撤销记录
+        stackInterner.forgetDropped(alertPipeline);
+        alertPipeline.start();
         // 尝试提前加载类,无论加载是否成功
         // UNIXProcess比ProcessImpl更加底层，绕过可能性小; 但是jdk9+没有这个类
         ClassLoaderUtil.earlyLoadClass("java.lang.ProcessImpl", "java.lang.UNIXProcess");
@@ -52,14 +103,54 @@ public class RceModule implements Module, LoadCompleted {
         }
     }
 
+    @Override
+    public void onUnload() throws Throwable {
+        alertPipeline.stop();
+    }
+
+    @Command("/alert")
+    public void alert(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.alert("rce", alertPipeline, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/ratelimit")
+    public void rateLimit(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.rateLimit("rce", alertRateLimiter, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/policy")
+    public void policy(Map<String, String> parameterMap, final PrintWriter writer) {
+        backgroundPolicy = ModuleCommands.policy("rce", backgroundPolicy, parameterMap, writer, jsonObject, logger);
+    }
+
+    @Command("/metrics")
+    public void metrics(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.metrics(metricsRegistry, parameterMap, writer, jsonObject);
+    }
+
+    @Command("/cache")
+    public void cache(Map<String, String> parameterMap, final PrintWriter writer) {
+        String result = jsonObject.toJSONString(RestResultUtils.success("命令判定缓存统计", verdictCache.status()));
+        writer.println(result);
+        writer.flush();
+        writer.close();
+    }
+
     @Command("/whitelist")
     public void config(Map<String, String[]> parameterMap, final PrintWriter writer) {
         String[] whiteLists = parameterMap.get("item");
+        String message = "更新命令执行白名单";
         if (whiteLists != null && whiteLists.length > 0) {
-            cmdWhiteList.clear();
-            cmdWhiteList.addAll(Arrays.asList(whiteLists));
+            try {
+                cmdWhiteList = CommandAllowlist.compile(whiteLists);
+                verdictCache.invalidate();
+            } catch (IllegalArgumentException e) {
+                // 规则错误时保留原来的白名单
+                logger.warn("rce whitelist rule error: {}", e.getMessage());
+                message = "命令执行白名单规则错误: " + e.getMessage();
+            }
         }
-        String result = jsonObject.toJSONString(RestResultUtils.success("更新命令执行白名单", cmdWhiteList));
+        String result = jsonObject.toJSONString(RestResultUtils.success(message, cmdWhiteList.getRules()));
         writer.println(result);
         writer.flush();
         writer.close();
@@ -69,7 +160,16 @@ public class RceModule implements Module, LoadCompleted {
     public void block(Map<String, String> parameterMap, final PrintWriter writer) {
         String isBlockParam = parameterMap.get("isBlock");
         enableBlock = Boolean.parseBoolean(isBlockParam);
-        logger.info("rce block status: {}", enableBlock);
+        String scoreParam = parameterMap.get("score");
+        if (scoreParam != null) {
+            try {
+                blockScore = Integer.parseInt(scoreParam);
+            } catch (NumberFormatException e) {
+                logger.warn("rce block score param error: {}", e.getMessage());
+            }
+        }
+        verdictCache.invalidate();
+        logger.info("rce block status: {}, block score: {}", enableBlock, blockScore);
         String result = jsonObject.toJSONString(RestResultUtils.success("更新命令执行阻断状态", enableBlock));
         writer.println(result);
         writer.flush();
@@ -79,6 +179,7 @@ public class RceModule implements Module, LoadCompleted {
     public void processImplHook() {
         final String className = "java.lang.ProcessImpl";
         final String methodName = "start";
+        final HookMetrics hookMetrics = metricsRegistry.hook(className, methodName);
         new EventWatchBuilder(moduleEventWatcher)
                 .onClass(className)
                 .includeBootstrap()
@@ -88,13 +189,8 @@ public class RceModule implements Module, LoadCompleted {
                     public void before(Advice advice) throws Throwable {
                         // 获取命令
                         String[] cmdArray = (String[]) advice.getParameterArray()[0];
-                        String cmdString = StringUtils.join(cmdArray, " ");
-                        checkCmdAndPrintLog(cmdString, className, methodName);
-                    }
-
-                    @Override
-                    public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        CommandLine commandLine = CommandLine.decode(cmdArray);
+                        checkCmdAndPrintLog(commandLine, className, methodName, hookMetrics);
                     }
                 });
     }
@@ -102,6 +198,7 @@ public class RceModule implements Module, LoadCompleted {
     public void unixProcessHook() {
         final String className = "java.lang.UNIXProcess";
         final String methodName = "<init>";
+        final HookMetrics hookMetrics = metricsRegistry.hook(className, methodName);
         new EventWatchBuilder(moduleEventWatcher)
                 .onClass(className)
                 .includeBootstrap()
@@ -111,62 +208,82 @@ public class RceModule implements Module, LoadCompleted {
                     public void before(Advice advice) throws Throwable {
                         byte[] prog = (byte[]) advice.getParameterArray()[0];     // 命令
                         byte[] argBlock = (byte[]) advice.getParameterArray()[1]; // 参数
-                        String cmdString = getCommandAndArgs(prog, argBlock);
-                        checkCmdAndPrintLog(cmdString, className, methodName);
-                    }
-
-                    @Override
-                    public void afterThrowing(Advice advice) throws Throwable {
-                        requestInfoThreadLocal.remove();
+                        CommandLine commandLine = CommandLine.decode(prog, argBlock);
+                        checkCmdAndPrintLog(commandLine, className, methodName, hookMetrics);
                     }
                 });
     }
 
     public static String getCommandAndArgs(byte[] command, byte[] args) {
         // 命令&参数解析
-        List<String> commands = new LinkedList<String>();
-        if (command != null && command.length > 0) {
-            commands.add(new String(command, 0, command.length - 1));
-        }
-        if (args != null && args.length > 0) {
-            int position = 0;
-            for (int i = 0; i < args.length; i++) {
-                if (args[i] == 0) {
-                    commands.add(new String(Arrays.copyOfRange(args, position, i)));
-                    position = i + 1;
-                }
-            }
-        }
-        return StringUtils.join(commands, " ");
+        return CommandLine.decode(command, args).toString();
     }
 
-    private void checkCmdAndPrintLog(String cmdString, String className, String methodName) throws ProcessControlException {
-        long start = System.nanoTime();
+    private void checkCmdAndPrintLog(CommandLine commandLine, String className, String methodName, HookMetrics hookMetrics) throws ProcessControlException {
+        // 请求之外的线程按策略检测
+        HashMap<String, Object> requestInfo = RequestContext.current(requestInfoThreadLocal);
+        ThreadPolicy policy = RequestContext.isActive(requestInfo) ? ThreadPolicy.FULL : backgroundPolicy;
+        if (policy == ThreadPolicy.SKIP) {
+            return;
+        }
+        boolean contextual = policy == ThreadPolicy.FULL;
 
-        // 获取上下文参数
-        HashMap<String, Object> result = new HashMap<String, Object>(requestInfoThreadLocal.get());
+        long start = System.nanoTime();
 
         // 获取栈
-        ArrayList<String> stackTrace = StackTrace.getStackTrace();
-        result.put("stackTrace", stackTrace);
+        CapturedStack stackTrace = StackTrace.capture();
 
-        // 获取命令
-        result.put("cmdString", cmdString);
+        // 按 (命令, 调用栈) 查询判定缓存, 同一调用点重复执行的白名单命令只计数不输出日志
+        long cmdFingerprint = commandLine.fingerprint();
+        long verdictKey = Fingerprints.mix(Fingerprints.update(cmdFingerprint, stackTrace.fingerprint()));
+        int verdict = verdictCache.get(verdictKey);
+        if (verdict == CommandVerdictCache.ALLOWED) {
+            hookMetrics.record(System.nanoTime() - start);
+            return;
+        }
+        if (verdict == CommandVerdictCache.UNKNOWN) {
+            // 先读取缓存的代数再读取白名单: 判定期间白名单更新时, 判定结果不写入缓存
+            long generation = verdictCache.getGeneration();
+            CommandAllowlist whiteList = cmdWhiteList;
+            verdict = whiteList.matches(commandLine) ? CommandVerdictCache.ALLOWED : CommandVerdictCache.DENIED;
+            verdictCache.put(verdictKey, verdict, generation);
+        }
 
         // 判断是否阻断
-        boolean blockStatus = enableBlock && !cmdWhiteList.contains(cmdString);
-        result.put("isBlocked", blockStatus);
+        String cmdString = commandLine.toString();
+        // 不在白名单中的命令做词法分析, 按分数决定是否阻断
+        ShellVerdict shellVerdict = ShellVerdict.NONE;
+        if (verdict == CommandVerdictCache.DENIED) {
+            shellVerdict = ShellLexer.analyze(commandLine, contextual ? RequestContext.parameterMap(requestInfo) : null);
+        }
+        boolean blockStatus = enableBlock && verdict == CommandVerdictCache.DENIED && shellVerdict.getScore() >= blockScore;
 
-        // 输出日志
-        String s = jsonObject.toJSONString(result);
-        logger.warn(s);
+        // 告警限流, 被限流时不输出日志
+        long suppressed = alertRateLimiter.tryAcquire(className, methodName, cmdFingerprint, cmdString);
+        if (suppressed >= 0) {
+            // 获取上下文参数
+            AlertEvent result = new AlertEvent(contextual ? RequestContext.snapshot(requestInfo) : RequestContext.Snapshot.EMPTY);
+            stackInterner.putStack(result, stackTrace);
 
-        // 耗时统计
-        long end = System.nanoTime();
-        logger.info("方法: {}, 耗时: {} ms", className + "#" + methodName, (end - start) / 1000000.0);
+            // 获取命令
+            result.put("cmdString", cmdString);
+            result.put("isBlocked", blockStatus);
+            result.put("score", shellVerdict.getScore());
+            result.put("reasons", shellVerdict.getReasons());
+            if (suppressed > 0) {
+                result.put("suppressed", suppressed);
+            }
+
+            // 输出日志
+            alertPipeline.emit(result);
+        }
+        hookMetrics.alert();
+        if (blockStatus) {
+            hookMetrics.block();
+        }
 
-        // 线程变量清除
-        requestInfoThreadLocal.remove();
+        // 耗时统计
+        hookMetrics.record(System.nanoTime() - start);
 
         // 抛出异常阻断
         if (blockStatus) {
@@ -0,0 +1,266 @@
+package com.jrasp.module.rce;
+
+import java.util.Map;
+
+// 命令行词法分析: 单次扫描 argv, 识别 shell 解释器、shell 元字符、重定向、下载执行等特征, 给出带分数的判定
+// 不创建字符串, 只在命令行缓冲区上比较字符
+public class ShellLexer {
+
+    // 请求参数值的最短长度, 太短的值容易误关联
+    private final static int MIN_PARAMETER_LENGTH = 4;
+
+    private final static String[] SHELLS = {"sh", "bash", "dash", "zsh", "ksh", "csh", "tcsh", "ash", "busybox", "cmd", "powershell", "pwsh"};
+
+    // 参数不能合并书写的 shell, 例如 powershell -NonInteractive 不是 -c
+    private final static String[] WINDOWS_SHELLS = {"cmd", "powershell", "pwsh"};
+
+    private final static String[] SCRIPT_INTERPRETERS = {"python", "python2", "python3", "perl", "ruby", "php", "node", "lua"};
+
+    // 解释器执行命令字符串的参数
+    private final static String[] COMMAND_FLAGS = {"-c", "/c", "/k", "-e", "-r", "-command", "-encodedcommand", "-enc"};
+
+    private final static String[] DOWNLOADERS = {"curl", "wget", "nc", "ncat", "netcat", "socat", "tftp", "fetch", "certutil", "bitsadmin"};
+
+    private final static String[] REVERSE_SHELL_MARKERS = {"/dev/tcp/", "/dev/udp/"};
+
+    // 字符类型
+    private final static int WORD = 0;
+
+    private final static int SPACE = 1;
+
+    private final static int META = 2;
+
+    private final static int PIPE = 3;
+
+    private final static int REDIRECT = 4;
+
+    public static ShellVerdict analyze(CommandLine commandLine, Map<String, String[]> parameterMap) {
+        int reasons = 0;
+        int argc = commandLine.argc();
+        if (argc == 0) {
+            return ShellVerdict.NONE;
+        }
+
+        // 可执行文件是解释器, 并且带有执行命令字符串的参数
+        boolean interpreter = false;
+        if (basenameIn(commandLine, 0, SHELLS) || basenameIn(commandLine, 0, SCRIPT_INTERPRETERS)) {
+            // 合并书写时 shell 以 c 执行命令, 脚本解释器以 e 执行代码
+            char flag = basenameIn(commandLine, 0, WINDOWS_SHELLS) ? 0 : basenameIn(commandLine, 0, SHELLS) ? 'c' : 'e';
+            for (int i = 1; i < argc; i++) {
+                if (argIn(commandLine, i, COMMAND_FLAGS) || (flag != 0 && flagCluster(commandLine, i, flag))) {
+                    interpreter = true;
+                    reasons |= ShellVerdict.INTERPRETER;
+                    break;
+                }
+            }
+        }
+
+        // 逐个字符扫描, 按空白和元字符切分单词; 管道只在同一个参数中有效, 单独作为参数的 | 只是普通字符
+        for (int i = 0; i < argc; i++) {
+            boolean afterPipe = false;
+            int end = commandLine.argEnd(i);
+            int wordStart = -1;
+            for (int c = commandLine.argStart(i); c <= end; c++) {
+                char ch = c < end ? commandLine.charAt(c) : ' ';
+                int kind = kind(ch);
+                if (kind == WORD) {
+                    if (wordStart < 0) {
+                        wordStart = c;
+                    }
+                    continue;
+                }
+                if (wordStart >= 0) {
+                    reasons |= word(commandLine, wordStart, c, afterPipe);
+                    afterPipe = false;
+                    wordStart = -1;
+                }
+                if (kind == PIPE) {
+                    afterPipe = true;
+                    reasons |= ShellVerdict.METACHAR;
+                } else if (kind == META) {
+                    afterPipe = false;
+                    reasons |= ShellVerdict.METACHAR;
+                } else if (kind == REDIRECT) {
+                    reasons |= ShellVerdict.REDIRECT;
+                }
+            }
+        }
+
+        if (correlates(commandLine, parameterMap)) {
+            reasons |= ShellVerdict.REQUEST_PARAMETER;
+        }
+        return new ShellVerdict(score(reasons, interpreter), reasons);
+    }
+
+    private static int kind(char ch) {
+        switch (ch) {
+            case ' ':
+            case '\t':
+            case '\r':
+                return SPACE;
+            case '|':
+                return PIPE;
+            case ';':
+            case '&':
+            case '$':
+            case '(':
+            case ')':
+            case '`':
+            case '\n':
+                return META;
+            case '>':
+            case '<':
+                return REDIRECT;
+            default:
+                return WORD;
+        }
+    }
+
+    private static int word(CommandLine commandLine, int start, int end, boolean afterPipe) {
+        int reasons = 0;
+        if (basenameIn(commandLine, start, end, DOWNLOADERS)) {
+            reasons |= ShellVerdict.DOWNLOADER;
+        }
+        // 管道后面紧跟 shell, 例如 curl x | sh
+        if (afterPipe && basenameIn(commandLine, start, end, SHELLS)) {
+            reasons |= ShellVerdict.PIPE_TO_SHELL;
+        }
+        if (contains(commandLine, start, end, REVERSE_SHELL_MARKERS)) {
+            reasons |= ShellVerdict.REVERSE_SHELL;
+        }
+        return reasons;
+    }
+
+    private static int score(int reasons, boolean interpreter) {
+        int score = 0;
+        if ((reasons & ShellVerdict.INTERPRETER) != 0) {
+            score += 30;
+        }
+        if ((reasons & ShellVerdict.METACHAR) != 0) {
+            // 没有 shell 解释时元字符不会生效
+            score += interpreter ? 20 : 5;
+        }
+        if ((reasons & ShellVerdict.REDIRECT) != 0) {
+            score += interpreter ? 10 : 0;
+        }
+        if ((reasons & ShellVerdict.DOWNLOADER) != 0) {
+            score += 20;
+        }
+        if ((reasons & ShellVerdict.PIPE_TO_SHELL) != 0) {
+            score += 40;
+        }
+        if ((reasons & ShellVerdict.REVERSE_SHELL) != 0) {
+            score += 60;
+        }
+        if ((reasons & ShellVerdict.REQUEST_PARAMETER) != 0) {
+            score += 40;
+        }
+        return Math.min(score, ShellVerdict.MAX_SCORE);
+    }
+
+    // 命令中包含请求参数的值
+    private static boolean correlates(CommandLine commandLine, Map<String, String[]> parameterMap) {
+        if (parameterMap == null || parameterMap.isEmpty()) {
+            return false;
+        }
+        for (String[] values : parameterMap.values()) {
+            if (values == null) {
+                continue;
+            }
+            for (String value : values) {
+                if (value != null && value.length() >= MIN_PARAMETER_LENGTH
+                        && indexOf(commandLine, 0, commandLine.length(), value) >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean basenameIn(CommandLine commandLine, int arg, String[] names) {
+        return basenameIn(commandLine, commandLine.argStart(arg), commandLine.argEnd(arg), names);
+    }
+
+    private static boolean basenameIn(CommandLine commandLine, int start, int end, String[] names) {
+        for (int i = end - 1; i >= start; i--) {
+            char ch = commandLine.charAt(i);
+            if (ch == '/' || ch == '\\') {
+                start = i + 1;
+                break;
+            }
+        }
+        // windows 下去掉 .exe 后缀
+        if (end - start > 4 && regionEqualsIgnoreCase(commandLine, end - 4, end, ".exe")) {
+            end -= 4;
+        }
+        return regionIn(commandLine, start, end, names);
+    }
+
+    // 合并的单字符参数中包含执行命令字符串的参数, 例如 bash -lc, sh -xc, perl -ne
+    private static boolean flagCluster(CommandLine commandLine, int arg, char flag) {
+        int start = commandLine.argStart(arg);
+        int end = commandLine.argEnd(arg);
+        if (end - start < 2 || commandLine.charAt(start) != '-') {
+            return false;
+        }
+        boolean found = false;
+        for (int i = start + 1; i < end; i++) {
+            char ch = commandLine.charAt(i);
+            if (!(ch >= 'a' && ch <= 'z') && !(ch >= 'A' && ch <= 'Z')) {
+                return false;
+            }
+            found |= ch == flag;
+        }
+        return found;
+    }
+
+    private static boolean argIn(CommandLine commandLine, int arg, String[] values) {
+        return regionIn(commandLine, commandLine.argStart(arg), commandLine.argEnd(arg), values);
+    }
+
+    private static boolean regionIn(CommandLine commandLine, int start, int end, String[] values) {
+        for (String value : values) {
+            if (regionEqualsIgnoreCase(commandLine, start, end, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(CommandLine commandLine, int start, int end, String[] values) {
+        for (String value : values) {
+            if (indexOf(commandLine, start, end, value) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEqualsIgnoreCase(CommandLine commandLine, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char a = commandLine.charAt(start + i);
+            char b = value.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CommandLine commandLine, int start, int end, String value) {
+        int last = end - value.length();
+        outer:
+        for (int i = start; i <= last; i++) {
+            for (int j = 0; j < value.length(); j++) {
+                if (commandLine.charAt(i + j) != value.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
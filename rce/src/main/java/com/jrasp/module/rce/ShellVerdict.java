@@ -0,0 +1,64 @@
+package com.jrasp.module.rce;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 命令行词法分析的结果: 分数 0~100 和命中的特征
+public class ShellVerdict {
+
+    public final static int MAX_SCORE = 100;
+
+    // 可执行文件是 shell 或脚本解释器, 并且通过 -c/-e 等参数执行命令字符串
+    public final static int INTERPRETER = 1;
+
+    // shell 元字符: | ; & $ ( ) ` 换行
+    public final static int METACHAR = 1 << 1;
+
+    // 重定向 > <
+    public final static int REDIRECT = 1 << 2;
+
+    // 下载工具: curl wget nc 等
+    public final static int DOWNLOADER = 1 << 3;
+
+    // 管道到 shell: curl x | sh
+    public final static int PIPE_TO_SHELL = 1 << 4;
+
+    // 反弹 shell: /dev/tcp/host/port
+    public final static int REVERSE_SHELL = 1 << 5;
+
+    // 命令中包含请求参数的值
+    public final static int REQUEST_PARAMETER = 1 << 6;
+
+    private final static String[] REASON_NAMES = {
+            "interpreter", "metachar", "redirect", "downloader", "pipeToShell", "reverseShell", "requestParameter"
+    };
+
+    public final static ShellVerdict NONE = new ShellVerdict(0, 0);
+
+    private final int score;
+
+    private final int reasons;
+
+    public ShellVerdict(int score, int reasons) {
+        this.score = score;
+        this.reasons = reasons;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public boolean has(int reason) {
+        return (reasons & reason) != 0;
+    }
+
+    public List<String> getReasons() {
+        List<String> result = new ArrayList<String>(REASON_NAMES.length);
+        for (int i = 0; i < REASON_NAMES.length; i++) {
+            if ((reasons & (1 << i)) != 0) {
+                result.add(REASON_NAMES[i]);
+            }
+        }
+        return result;
+    }
+}
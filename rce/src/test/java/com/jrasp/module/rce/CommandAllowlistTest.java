@@ -0,0 +1,64 @@
+package com.jrasp.module.rce;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandAllowlistTest {
+
+    private static boolean matches(CommandAllowlist allowlist, String... argv) {
+        return allowlist.matches(CommandLine.decode(argv));
+    }
+
+    @Test
+    public void exactAndPrefixRules() {
+        CommandAllowlist allowlist = CommandAllowlist.compile(new String[]{"/usr/bin/git status", "prefix:/usr/bin/git log"});
+        assertTrue(matches(allowlist, "/usr/bin/git", "status"));
+        assertFalse(matches(allowlist, "/usr/bin/git", "status", "-s"));
+        assertTrue(matches(allowlist, "/usr/bin/git", "log"));
+        assertTrue(matches(allowlist, "/usr/bin/git", "log", "--oneline", "-3"));
+        assertFalse(matches(allowlist, "/usr/bin/git", "push"));
+    }
+
+    @Test
+    public void wildcardAndRegexRules() {
+        CommandAllowlist allowlist = CommandAllowlist.compile(new String[]{
+                "/usr/bin/convert * **", "/usr/bin/ffmpeg -i *.mp4 **", "/usr/bin/git re:log|show **"});
+        assertTrue(matches(allowlist, "/usr/bin/convert", "a.png"));
+        assertTrue(matches(allowlist, "/usr/bin/convert", "a.png", "b.jpg"));
+        assertFalse(matches(allowlist, "/usr/bin/convert"));
+        assertTrue(matches(allowlist, "/usr/bin/ffmpeg", "-i", "in.mp4", "out.webm"));
+        assertFalse(matches(allowlist, "/usr/bin/ffmpeg", "-i", "in.mkv"));
+        assertTrue(matches(allowlist, "/usr/bin/git", "show", "HEAD"));
+        assertFalse(matches(allowlist, "/usr/bin/git", "showx"));
+    }
+
+    @Test
+    public void quotedArguments() {
+        CommandAllowlist allowlist = CommandAllowlist.compile(new String[]{"sh -c \"ls -la\"", "/bin/echo '*'"});
+        assertTrue(matches(allowlist, "sh", "-c", "ls -la"));
+        assertFalse(matches(allowlist, "sh", "-c", "ls", "-la"));
+        // 引号中的 * 不是通配符
+        assertTrue(matches(allowlist, "/bin/echo", "*"));
+        assertFalse(matches(allowlist, "/bin/echo", "x"));
+    }
+
+    @Test
+    public void legacyRuleMatchesJoinedCommandLine() {
+        CommandAllowlist allowlist = CommandAllowlist.compile(new String[]{"sh -c ls -la"});
+        assertTrue(matches(allowlist, "sh", "-c", "ls -la"));
+        assertTrue(matches(allowlist, "sh", "-c", "ls", "-la"));
+        assertFalse(matches(allowlist, "sh", "-c", "ls -la /"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unclosedQuote() {
+        CommandAllowlist.compile(new String[]{"sh -c \"ls"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anyRestMustBeLast() {
+        CommandAllowlist.compile(new String[]{"/usr/bin/git ** log"});
+    }
+}
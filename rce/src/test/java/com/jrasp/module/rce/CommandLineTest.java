@@ -0,0 +1,75 @@
+package com.jrasp.module.rce;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommandLineTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(Charset.defaultCharset());
+    }
+
+    @Test
+    public void decodeArray() {
+        CommandLine commandLine = CommandLine.decode(new String[]{"/bin/echo", "a b", ""});
+        assertEquals(3, commandLine.argc());
+        assertEquals("/bin/echo a b ", commandLine.toString());
+        assertEquals("a b", commandLine.arg(1));
+        assertEquals(0, commandLine.argLength(2));
+        assertTrue(commandLine.argEquals(1, "a b"));
+        assertFalse(commandLine.argEquals(1, "a"));
+    }
+
+    @Test
+    public void decodeArgBlock() {
+        // prog 和 argBlock 中的参数都以 \0 结尾
+        CommandLine commandLine = CommandLine.decode(bytes("/bin/ls\0"), bytes("-la\0/tmp\0"));
+        assertEquals(3, commandLine.argc());
+        assertEquals("/bin/ls -la /tmp", commandLine.toString());
+        assertEquals("/tmp", commandLine.arg(2));
+    }
+
+    @Test
+    public void decodeNonAscii() {
+        // 非 ascii 参数按平台编码解码
+        String arg = new String(bytes("中文"), Charset.defaultCharset());
+        CommandLine commandLine = CommandLine.decode(bytes("/bin/echo\0"), bytes(arg + "\0x\0"));
+        assertEquals(arg, commandLine.arg(1));
+        assertEquals("x", commandLine.arg(2));
+    }
+
+    @Test
+    public void reusedBufferIsReset() {
+        StringBuilder longArg = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longArg.append("0123456789");
+        }
+        CommandLine commandLine = CommandLine.decode(new String[]{"/bin/echo", longArg.toString()});
+        assertEquals(longArg.length(), commandLine.argLength(1));
+        commandLine = CommandLine.decode(new String[]{"id"});
+        assertEquals(1, commandLine.argc());
+        assertEquals("id", commandLine.toString());
+    }
+
+    @Test
+    public void fingerprintKeepsArgumentBoundaries() {
+        long split = CommandLine.decode(new String[]{"/bin/echo", "a", "b"}).fingerprint();
+        long joined = CommandLine.decode(new String[]{"/bin/echo", "a b"}).fingerprint();
+        long same = CommandLine.decode(new String[]{"/bin/echo", "a", "b"}).fingerprint();
+        assertNotEquals(split, joined);
+        assertEquals(split, same);
+        assertNotEquals(CommandLine.decode(new String[]{"/bin/echo", ""}).fingerprint(),
+                CommandLine.decode(new String[]{"/bin/echo"}).fingerprint());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void argOutOfRange() {
+        CommandLine.decode(new String[]{"id"}).arg(1);
+    }
+}
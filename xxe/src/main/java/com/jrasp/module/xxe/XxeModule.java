@@ -13,6 +13,9 @@ import com.jrasp.api.log.Log;
 import com.jrasp.api.model.RestResultUtils;
 import com.jrasp.api.resource.ModuleEventWatcher;
 import com.jrasp.module.common.ClassLoaderUtil;
+import com.jrasp.module.common.HookMetrics;
+import com.jrasp.module.common.MetricsRegistry;
+import com.jrasp.module.common.ModuleCommands;
 import org.kohsuke.MetaInfServices;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -33,6 +36,9 @@ public class XxeModule implements Module, LoadCompleted {
     @Resource
     private ModuleEventWatcher moduleEventWatcher;
 
+    // 各 hook 点的耗时分布和命中、告警、阻断次数
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
     private volatile boolean enableBlock = true;
 
     @Override
@@ -55,6 +61,11 @@ public class XxeModule implements Module, LoadCompleted {
         writer.close();
     }
 
+    @Command("/metrics")
+    public void metrics(Map<String, String> parameterMap, final PrintWriter writer) {
+        ModuleCommands.metrics(metricsRegistry, parameterMap, writer, jsonObject);
+    }
+
     private static final String FEATURE_DEFAULTS_1 = "http://apache.org/xml/features/disallow-doctype-decl";
     private static final String FEATURE_DEFAULTS_2 = "http://xml.org/sax/features/external-general-entities";
     private static final String FEATURE_DEFAULTS_3 = "http://xml.org/sax/features/external-parameter-entities";
@@ -63,6 +74,7 @@ public class XxeModule implements Module, LoadCompleted {
     public void closeDocumentBuilderFactoryConfigXXE() {
         final String className = "javax.xml.parsers.DocumentBuilderFactory";
         final String methdName = "newInstance";
+        final HookMetrics hookMetrics = metricsRegistry.hook(className, methdName);
         new EventWatchBuilder(moduleEventWatcher)
                 .onClass(className)
                 .includeBootstrap()
@@ -84,8 +96,8 @@ public class XxeModule implements Module, LoadCompleted {
                         instance.setFeature(FEATURE_DEFAULTS_4, false);
                         instance.setXIncludeAware(false);
                         instance.setExpandEntityReferences(false);
-                        long end = System.nanoTime();
-                        logger.info("方法: {}, 耗时: {} ms", className + "#" + methdName, (end - start) / 1000000.0);
+                        // 耗时统计
+                        hookMetrics.record(System.nanoTime() - start);
                     }
                 });
     }
@@ -93,6 +105,7 @@ public class XxeModule implements Module, LoadCompleted {
     public void closeXMLInputFactoryConfigXXE() {
         final String className = "javax.xml.stream.XMLInputFactory";
         final String methdName = "newInstance";
+        final HookMetrics hookMetrics = metricsRegistry.hook(className, methdName);
         new EventWatchBuilder(moduleEventWatcher)
                 .onClass(className)
                 .includeBootstrap()
@@ -108,8 +121,8 @@ public class XxeModule implements Module, LoadCompleted {
                         XMLInputFactory factory = (XMLInputFactory) advice.getReturnObj();
                         factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
                         factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
-                        long end = System.nanoTime();
-                        logger.info("方法: {}, 耗时: {} ms", className + "#" + methdName, (end - start) / 1000000.0);
+                        // 耗时统计
+                        hookMetrics.record(System.nanoTime() - start);
                     }
                 });
     }